@@ -0,0 +1,274 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+// runs lots of headless games (every map x every rule x every seed) in
+//   parallel and writes per-rule statistics to a CSV file, to compare
+//   MoveRules with numbers instead of by watching play mode
+// usage: java BatchRunner [options] <wallset file or folder>...
+//   -ghosts N   ghosts per game, all following the same rule (5)
+//   -seeds N    games per map and rule, seeds 0..N-1 (20)
+//   -ticks N    ticks before a game gives up (5000)
+//   -rules a,b  which rules (bfs,dfs,dijkstra,astar,flow,random)
+//   -out FILE   where to write results (batch.csv)
+//   -check      play every game twice and report any that came out
+//               differently (they shouldn't)
+// NOTE: each game gets its own copy of the map (the graph and player
+//   connections live in the WallSet), and all randomness comes from the
+//   seed, so running again gives the same numbers; -check tests that,
+//   since the second copy's Points hash differently from the first's
+class BatchRunner {
+  // rules by name, each made from the point it chases
+  static final Map<String, Function<Point, MoveRule>> RULES = new LinkedHashMap<>();
+  static {
+    RULES.put("bfs", breadthFirstSearch::new);
+    RULES.put("dfs", depthFirstSearch::new);
+    RULES.put("dijkstra", Dijkstra::new);
+    RULES.put("astar", AStar::new);
+    RULES.put("flow", FlowField::new);
+    RULES.put("random", RandomizedMovement::new);
+  }
+
+  // area games are played in (the sketch's size)
+  static final float WIDTH = 1000, HEIGHT = 800;
+  // the player wanders: picks a new random spot to head for this often
+  static final int WANDER_TICKS = 120;
+
+  // outcome of one game
+  static class Result {
+    String map, rule;
+    long seed;
+    int[] caughtAt;       // tick each ghost caught the player, or -1
+    double[] pathLength;  // distance each ghost moved until then
+    long ticks;
+    long cpuNanos;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int ghosts = 5, seeds = 20, maxTicks = 5000;
+    List<String> ruleNames = new ArrayList<>(RULES.keySet());
+    File out = new File("batch.csv");
+    List<File> files = new ArrayList<>();
+    boolean check = false;
+
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (arg.equals("-check")) {
+        check = true;
+        continue;
+      }
+      if (arg.startsWith("-") && i + 1 == args.length) {
+        System.err.println("Missing value for " + arg);
+        return;
+      }
+      if      (arg.equals("-ghosts")) ghosts = Integer.parseInt(args[++i]);
+      else if (arg.equals("-seeds"))  seeds = Integer.parseInt(args[++i]);
+      else if (arg.equals("-ticks"))  maxTicks = Integer.parseInt(args[++i]);
+      else if (arg.equals("-rules"))  ruleNames = Arrays.asList(args[++i].split(","));
+      else if (arg.equals("-out"))    out = new File(args[++i]);
+      else {
+        File f = new File(arg);
+        if (f.isDirectory()) {
+          for (File inner : f.listFiles()) {
+            if (!inner.isDirectory()) files.add(inner);
+          }
+        }
+        else files.add(f);
+      }
+    }
+    for (String rule : ruleNames) {
+      if (!RULES.containsKey(rule)) {
+        System.err.println("Unknown rule " + rule + "; expected one of " + RULES.keySet());
+        return;
+      }
+    }
+
+    // maps are loaded once; each game builds its own WallSet from these
+    Map<String, float[]> maps = new LinkedHashMap<>();
+    for (File f : files) {
+      WallSet ws = WallSet.fromFile(f);
+      if (ws != null) maps.put(f.getName(), ws.coords());
+    }
+    if (maps.isEmpty()) {
+      System.err.println("No wall sets to run on.");
+      return;
+    }
+
+    ForkJoinPool pool = new ForkJoinPool();
+    List<Callable<Result>> games = new ArrayList<>();
+    for (Map.Entry<String, float[]> map : maps.entrySet()) {
+      for (String rule : ruleNames) {
+        for (int seed = 0; seed < seeds; seed++) {
+          String name = map.getKey();
+          float[] coords = map.getValue();
+          long s = seed;
+          int g = ghosts, t = maxTicks;
+          games.add(() -> play(name, coords, rule, g, s, t));
+        }
+      }
+    }
+
+    System.out.println("Running " + games.size() + " games on " +
+                       pool.getParallelism() + " threads...");
+    long start = System.nanoTime();
+    List<Result> results = runAll(pool, games);
+    System.out.printf("Done in %.1fs%n", (System.nanoTime() - start) / 1e9);
+
+    if (check) {
+      System.out.println("Playing every game again to check they come out the same...");
+      List<Result> again = runAll(pool, games);
+      int differ = 0;
+      for (int i = 0; i < Math.min(results.size(), again.size()); i++) {
+        Result a = results.get(i), b = again.get(i);
+        if (!Arrays.equals(a.caughtAt, b.caughtAt) || !Arrays.equals(a.pathLength, b.pathLength)) {
+          System.err.println("Game differs: " + a.map + ", " + a.rule + ", seed " + a.seed);
+          differ++;
+        }
+      }
+      if (results.size() != again.size()) differ++;
+      System.out.println(differ == 0 ? "Every game came out the same." : differ + " games came out differently.");
+    }
+    pool.shutdown();
+
+    writeCsv(out, results, ruleNames, maps.keySet());
+  }
+
+  // plays every game, in order, leaving out any that fail
+  static List<Result> runAll(ForkJoinPool pool, List<Callable<Result>> games)
+      throws InterruptedException {
+    List<Result> results = new ArrayList<>();
+    for (Future<Result> f : pool.invokeAll(games)) {
+      try {
+        results.add(f.get());
+      }
+      catch (ExecutionException ee) {
+        System.err.println("Game failed: " + ee.getCause());
+      }
+    }
+    return results;
+  }
+
+  // plays one game to the end (every ghost caught the player, or out of
+  //   ticks)
+  static Result play(String map, float[] coords, String rule, int ghosts, long seed,
+                     int maxTicks) {
+    ThreadMXBean cpu = ManagementFactory.getThreadMXBean();
+    WallSet ws = WallSet.fromCoords(coords, coords.length / 4);
+
+    Point target = new Point(0, 0);
+    Simulation sim = new Simulation(ws, WIDTH, HEIGHT, target, seed);
+    // same start for every rule with this seed, just different ghosts
+    sim.reset(RULES.get(rule), ghosts);
+    // kept apart from sim.random so rules that use randomness don't
+    //   change where the player goes
+    Random wander = new Random(seed * 31 + 17);
+
+    Result r = new Result();
+    r.map = map;
+    r.rule = rule;
+    r.seed = seed;
+    r.caughtAt = new int[ghosts];
+    r.pathLength = new double[ghosts];
+    Arrays.fill(r.caughtAt, -1);
+
+    float[] lastX = new float[ghosts], lastY = new float[ghosts];
+    int left = ghosts;
+    long cpuStart = cpu.getCurrentThreadCpuTime();
+
+    while (left > 0 && sim.ticks < maxTicks) {
+      if (sim.ticks % WANDER_TICKS == 0) {
+        target.x = wander.nextFloat() * WIDTH;
+        target.y = wander.nextFloat() * HEIGHT;
+      }
+      for (int i = 0; i < ghosts; i++) {
+        lastX[i] = sim.ghosts[i].x;
+        lastY[i] = sim.ghosts[i].y;
+      }
+
+      sim.tick();
+
+      for (int i = 0; i < ghosts; i++) {
+        if (r.caughtAt[i] >= 0) continue;
+        Mover m = sim.ghosts[i];
+        float dx = m.x - lastX[i], dy = m.y - lastY[i];
+        r.pathLength[i] += Math.sqrt(dx*dx + dy*dy);
+        if (sim.caught(m)) {
+          r.caughtAt[i] = (int) sim.ticks;
+          left--;
+        }
+      }
+    }
+
+    r.cpuNanos = cpu.getCurrentThreadCpuTime() - cpuStart;
+    r.ticks = sim.ticks;
+    return r;
+  }
+
+  // one row per map and rule, plus an "(all)" row per rule
+  static void writeCsv(File f, List<Result> results, List<String> rules,
+                       Iterable<String> maps) {
+    try ( PrintWriter out = new PrintWriter(f) ) {
+      out.println("map,rule,games,ghosts,catch_rate,mean_ticks_to_catch," +
+                  "median_ticks_to_catch,mean_path_length,cpu_us_per_tick");
+      for (String map : maps) {
+        for (String rule : rules) writeRow(out, map, rule, results);
+      }
+      for (String rule : rules) writeRow(out, null, rule, results);
+    }
+    catch (FileNotFoundException fnfe) {
+      System.err.println("Failed to write " + f.getPath());
+      System.err.println("  " + fnfe.getMessage());
+      return;
+    }
+    System.out.println("Wrote " + f.getPath());
+  }
+
+  // statistics over the games of one rule (on one map, or all if null)
+  static void writeRow(PrintWriter out, String map, String rule, List<Result> results) {
+    int games = 0, ghosts = 0;
+    long ticks = 0, cpuNanos = 0;
+    List<Integer> catchTicks = new ArrayList<>();
+    double pathTotal = 0;
+
+    for (Result r : results) {
+      if (!r.rule.equals(rule) || map != null && !r.map.equals(map)) continue;
+      games++;
+      ticks += r.ticks;
+      cpuNanos += r.cpuNanos;
+      for (int i = 0; i < r.caughtAt.length; i++) {
+        ghosts++;
+        if (r.caughtAt[i] < 0) continue;
+        catchTicks.add(r.caughtAt[i]);
+        pathTotal += r.pathLength[i];
+      }
+    }
+    if (games == 0) return;
+
+    int caught = catchTicks.size();
+    catchTicks.sort(null);
+    double meanTicks = 0;
+    for (int t : catchTicks) meanTicks += t;
+
+    String name = map == null ? "(all)" : "\"" + map.replace("\"", "\"\"") + "\"";
+    out.println(String.format(Locale.ROOT, "%s,%s,%d,%d,%.3f,%s,%s,%s,%.2f",
+      name, rule, games, ghosts, (double) caught / ghosts,
+      caught == 0 ? "" : String.format(Locale.ROOT, "%.1f", meanTicks / caught),
+      caught == 0 ? "" : String.valueOf(catchTicks.get(caught / 2)),
+      caught == 0 ? "" : String.format(Locale.ROOT, "%.1f", pathTotal / caught),
+      ticks == 0 ? 0.0 : cpuNanos / 1000.0 / ticks));
+  }
+}
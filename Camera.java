@@ -0,0 +1,70 @@
+import processing.core.PApplet;
+
+// which part of the world is on screen: the world point at the top
+//   left corner of the window, and how many pixels one world unit takes
+//   up (screen = (world - corner) * zoom)
+// NOTE: the view is kept inside EXTENT of the origin (see limit), so
+//   anything placed with the mouse is too; that's as much of the world
+//   as fits in the wall grid's cells (see WallGrid.MAX_SIDE)
+class Camera {
+  static final float EXTENT = WallGrid.MAX_SIDE * WallGrid.CELL_SIZE / 2;
+  static final float MIN_ZOOM = 0.1f, MAX_ZOOM = 20;
+
+  float x = 0, y = 0;
+  float zoom = 1;
+
+  float worldX(float screenX) {
+    return x + screenX / zoom;
+  }
+
+  float worldY(float screenY) {
+    return y + screenY / zoom;
+  }
+
+  float screenX(float worldX) {
+    return (worldX - x) * zoom;
+  }
+
+  float screenY(float worldY) {
+    return (worldY - y) * zoom;
+  }
+
+  // moves the view by a distance in pixels (eg a mouse drag)
+  void pan(float dx, float dy) {
+    x -= dx / zoom;
+    y -= dy / zoom;
+  }
+
+  // zooms by factor, keeping whatever is under screen point (sx, sy)
+  //   where it is
+  void zoomAt(float sx, float sy, float factor) {
+    float wx = worldX(sx), wy = worldY(sy);
+    zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+    x = wx - sx / zoom;
+    y = wy - sy / zoom;
+  }
+
+  // keeps a w by h pixel view inside the world's bounds, or centred on
+  //   them if it's bigger than that
+  void limit(float w, float h) {
+    x = inside(x, w / zoom);
+    y = inside(y, h / zoom);
+  }
+
+  // where a view span wide should start along one axis to stay inside
+  static float inside(float corner, float span) {
+    if (span >= 2 * EXTENT) return -span / 2;
+    return Math.max(-EXTENT, Math.min(EXTENT - span, corner));
+  }
+
+  void reset() {
+    x = y = 0;
+    zoom = 1;
+  }
+
+  // draw in world coordinates from here on (until popMatrix)
+  void apply(PApplet pa) {
+    pa.scale(zoom);
+    pa.translate(-x, -y);
+  }
+}
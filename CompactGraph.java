@@ -0,0 +1,197 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// read-only snapshot of the visibility graph among wall points in
+//   compressed sparse row ("CSR") form: each point gets a dense int id
+//   (stored in Point.id), and the neighbours of node i are
+//   next[offsets[i]] .. next[offsets[i+1]-1], with the length of each
+//   edge precomputed in weight[]
+// NOTE: searches run over this rather than Point.connections, so they
+//   walk plain int/float arrays instead of hashing through HashSets;
+//   the HashSets stay the editable copy that VisibilityGraph updates
+//   incrementally, and this is rebuilt from them when the graph's
+//   version changes
+// NOTE: so every edge is stored twice, and this doesn't save memory, it
+//   costs some: 8 bytes an edge here against 40-50 in the HashSets. A
+//   CSR can't take an edit without being rebuilt, though, and moving
+//   one wall point changes edges all over the graph, so the sets are
+//   kept for editing and this only for searching
+class CompactGraph {
+  Point[] nodes;
+  int[] offsets;
+  int[] next;
+  float[] weight;
+  int maxDegree;  // most neighbours of any one node
+  int version;  // VisibilityGraph version this was built from
+
+  // NOTE: ids follow the order of ws.points (the order points were
+  //   added), so they're the same from run to run
+  static CompactGraph of(VisibilityGraph g) {
+    CompactGraph cg = new CompactGraph();
+    cg.version = g.version;
+    cg.nodes = g.ws.points.toArray(new Point[0]);
+    int n = cg.nodes.length;
+    for (int i = 0; i < n; i++) cg.nodes[i].id = i;
+
+    // count edges (to other wall points only) to size the arrays
+    cg.offsets = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      int degree = 0;
+      for (Point q : cg.nodes[i].connections) {
+        if (cg.idOf(q) >= 0) degree++;
+      }
+      cg.offsets[i + 1] = cg.offsets[i] + degree;
+      cg.maxDegree = Math.max(cg.maxDegree, degree);
+    }
+
+    cg.next = new int[cg.offsets[n]];
+    cg.weight = new float[cg.offsets[n]];
+    for (int i = 0; i < n; i++) {
+      int e = cg.offsets[i];
+      for (Point q : cg.nodes[i].connections) {
+        int j = cg.idOf(q);
+        if (j >= 0) cg.next[e++] = j;
+      }
+      // connections is a HashSet (in no set order), and searches break
+      //   ties by neighbour order, so sort them to get the same result
+      //   every run
+      Arrays.sort(cg.next, cg.offsets[i], e);
+      for (e = cg.offsets[i]; e < cg.offsets[i + 1]; e++) {
+        cg.weight[e] = (float) cg.nodes[i].distTo(cg.nodes[cg.next[e]]);
+      }
+    }
+    return cg;
+  }
+
+  int size() {
+    return nodes.length;
+  }
+
+  // id of p in this graph, or -1 if it isn't a node of it
+  int idOf(Point p) {
+    int id = p.id;
+    return (id >= 0 && id < nodes.length && nodes[id] == p) ? id : -1;
+  }
+
+  // one search from a Mover to a target over this graph
+  // the two moving ends aren't part of the snapshot, so they are
+  //   added as extra nodes: the mover is node size() ("source") with
+  //   the edges in its own connections, and the target is node
+  //   size()+1 ("goal"), reachable from every point in target's
+  //   connections
+  Query query(Mover m, Point target) {
+    return new Query(m, target);
+  }
+
+  class Query {
+    Mover m;
+    Point target;
+    int source, goal;
+
+    int[] sourceNext;
+    float[] sourceWeight;
+    boolean sourceSeesGoal;
+    boolean[] seesGoal;  // by static id
+
+    Query(Mover m, Point target) {
+      this.m = m;
+      this.target = target;
+      source = size();
+      goal = size() + 1;
+
+      m.updateConnections();
+      List<Integer> ids = new ArrayList<>();
+      for (Point q : m.connections) {
+        if (q == target) sourceSeesGoal = true;
+        else if (idOf(q) >= 0) ids.add(idOf(q));
+      }
+      Collections.sort(ids);  // same order every run (see of())
+      sourceNext = new int[ids.size()];
+      sourceWeight = new float[ids.size()];
+      for (int k = 0; k < sourceNext.length; k++) {
+        sourceNext[k] = ids.get(k);
+        sourceWeight[k] = (float) m.distTo(nodes[sourceNext[k]]);
+      }
+
+      seesGoal = new boolean[size()];
+      for (Point q : target.connections) {
+        int id = idOf(q);
+        if (id >= 0) seesGoal[id] = true;
+      }
+    }
+
+    // total number of ids, including source and goal
+    int count() {
+      return size() + 2;
+    }
+
+    // most edges there can be in total, counting those to/from the
+    //   source and goal (for sizing buffers)
+    int edgeCount() {
+      return next.length + sourceNext.length + size() + 1;
+    }
+
+    // most neighbours any one node can have (for sizing buffers), the
+    //   goal included
+    int maxDegree() {
+      return Math.max(sourceNext.length, maxDegree) + 1;
+    }
+
+    // copies the neighbours of node u (and edge lengths, if w isn't
+    //   null) into ids/w, returning how many there are
+    // NOTE: every search calls this once per node it expands, so this
+    //   is where expansions are counted
+    int neighbours(int u, int[] ids, float[] w) {
+      Metrics.countExpansion();
+      int n = 0;
+      if (u == goal) return 0;
+      if (u == source) {
+        for (int k = 0; k < sourceNext.length; k++) {
+          ids[n] = sourceNext[k];
+          if (w != null) w[n] = sourceWeight[k];
+          n++;
+        }
+        if (sourceSeesGoal) {
+          ids[n] = goal;
+          if (w != null) w[n] = (float) m.distTo(target);
+          n++;
+        }
+        return n;
+      }
+      for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+        ids[n] = next[e];
+        if (w != null) w[n] = weight[e];
+        n++;
+      }
+      if (seesGoal[u]) {
+        ids[n] = goal;
+        if (w != null) w[n] = (float) nodes[u].distTo(target);
+        n++;
+      }
+      return n;
+    }
+
+    Point point(int id) {
+      if (id == source) return m;
+      if (id == goal) return target;
+      return nodes[id];
+    }
+
+    // straight-line distance from node id to the target
+    double distToGoal(int id) {
+      return point(id).distTo(target);
+    }
+
+    // Points along parent pointers from source to id, optionally
+    //   leaving out the source (the mover) itself
+    List<Point> pathTo(int[] parent, int id, boolean includeStart) {
+      List<Point> path = new ArrayList<>();
+      for (int at = id; at != -1; at = parent[at]) path.add(point(at));
+      if (!includeStart) path.remove(path.size() - 1);
+      Collections.reverse(path);
+      return path;
+    }
+  }
+}
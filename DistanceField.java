@@ -0,0 +1,125 @@
+import java.util.Arrays;
+
+// shortest distance from every wall point to a target (and which point
+//   to head for next to get there), from one Dijkstra run outward from
+//   the target over the compact graph
+// NOTE: this is the "flow field" idea: instead of every Mover searching
+//   from itself to the same target, the search is done once backwards
+//   from the target, and any number of Movers just read off where to
+//   go next (see FlowField). Edges go both ways in the visibility
+//   graph, so searching from the target gives the same distances as
+//   searching to it
+class DistanceField {
+  // toward[] value for points that see the target directly
+  static final int TARGET = -1;
+
+  Point target;
+  CompactGraph graph;
+  float[] dist;    // by compact id; infinite if the target can't be reached
+  int[] toward;    // next point (id) on the way, or TARGET
+
+  // what the field was worked out from, to know when it is stale
+  int graphVersion = -1, targetVersion = -1;
+  float targetX, targetY;
+
+  DistanceField(Point target) {
+    this.target = target;
+  }
+
+  // works the field out again if the graph, what the target can see,
+  //   or where the target is has changed since last time
+  // NOTE: so with any number of Movers reading it, it is rebuilt at
+  //   most once per tick (when the target moves)
+  boolean update(VisibilityGraph g) {
+    CompactGraph cg = g.compact();
+    if (cg == graph && graphVersion == cg.version && targetVersion == target.connectionsVersion
+        && targetX == target.x && targetY == target.y) return false;
+
+    graph = cg;
+    graphVersion = cg.version;
+    targetVersion = target.connectionsVersion;
+    targetX = target.x;
+    targetY = target.y;
+    build();
+    return true;
+  }
+
+  void build() {
+    int n = graph.size();
+    dist = new float[n];
+    toward = new int[n];
+    boolean[] done = new boolean[n];
+    Arrays.fill(dist, Float.POSITIVE_INFINITY);
+    Arrays.fill(toward, TARGET);
+
+    // every point that sees the target starts a straight line to it
+    // NOTE: pushed in id order, not target.connections' (run to run
+    //   changing) order, so ties come out the same way every time
+    IndexedHeap paths = new IndexedHeap();
+    for (int id = 0; id < n; id++) {
+      Point q = graph.nodes[id];
+      if (!target.connections.contains(q)) continue;
+      dist[id] = (float) q.distTo(target);
+      paths.push(id, dist[id]);
+    }
+
+    while (!paths.isEmpty()) {
+      int u = paths.pop();
+      done[u] = true;
+      Metrics.countExpansion();
+
+      for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+        int v = graph.next[e];
+        if (done[v]) continue;
+        float d = dist[u] + graph.weight[e];
+        if (d < dist[v]) {
+          dist[v] = d;
+          toward[v] = u;
+          paths.push(v, d);
+        }
+      }
+    }
+  }
+
+  // shortest distance from wall point p to the target, or infinite if
+  //   there is no way there (or p isn't part of the graph)
+  float distFrom(Point p) {
+    int id = graph.idOf(p);
+    return id < 0 ? Float.POSITIVE_INFINITY : dist[id];
+  }
+
+  // id of p, with the target before every wall point
+  int order(Point p) {
+    return p == target ? -1 : graph.idOf(p);
+  }
+
+  // where m should head next: the best of the points it can see (or the
+  //   target itself, if it can see that), or null if none lead there
+  // NOTE: only looks at m's own connections, so it costs O(degree)
+  //   rather than a search
+  Point next(Mover m) {
+    m.updateConnections();
+    Point best = null;
+    double bestDist = Double.POSITIVE_INFINITY;
+    for (Point q : m.connections) {
+      double d = q == target ? m.distTo(target) : m.distTo(q) + distFrom(q);
+      // ties go to the lower id (the target first), not to whichever
+      //   the HashSet happens to give first
+      if (d < bestDist || (d == bestDist && best != null && order(q) < order(best))) {
+        best = q;
+        bestDist = d;
+      }
+    }
+    if (best == null || best == target) return best;
+
+    // already standing on that point (m's connections may not have
+    //   caught up yet): carry on to the one after it
+    int id = graph.idOf(best);
+    while (m.distTo(best) < CachedRoute.REACHED) {
+      best = toward[id] == TARGET ? target : graph.nodes[toward[id]];
+      if (best == target) break;
+      id = toward[id];
+    }
+    return best;
+  }
+}
@@ -0,0 +1,89 @@
+import java.util.Arrays;
+
+// binary min-heap of int ids ordered by a key, which remembers where
+//   each id is so its key can be lowered in place ("decrease-key")
+//   instead of pushing duplicate entries
+class IndexedHeap {
+  int[] heap = new int[64];   // ids, in heap order
+  int[] pos = new int[64];    // where each id is in heap, or -1
+  double[] key = new double[64];
+  int size = 0;
+
+  IndexedHeap() {
+    Arrays.fill(pos, -1);
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  boolean contains(int id) {
+    return id < pos.length && pos[id] >= 0;
+  }
+
+  // adds id with a key, or lowers its key if it is already here
+  //   with a bigger one
+  void push(int id, double k) {
+    if (id >= pos.length) {
+      int cap = Math.max(id + 1, pos.length * 2);
+      int old = pos.length;
+      pos = Arrays.copyOf(pos, cap);
+      Arrays.fill(pos, old, cap, -1);
+      key = Arrays.copyOf(key, cap);
+    }
+    if (pos[id] >= 0) {
+      if (k < key[id]) {
+        key[id] = k;
+        up(pos[id]);
+      }
+      return;
+    }
+
+    if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+    key[id] = k;
+    heap[size] = id;
+    pos[id] = size;
+    up(size++);
+  }
+
+  // removes and returns the id with the smallest key
+  int pop() {
+    int top = heap[0];
+    pos[top] = -1;
+    size--;
+    if (size > 0) {
+      heap[0] = heap[size];
+      pos[heap[0]] = 0;
+      down(0);
+    }
+    return top;
+  }
+
+  void up(int i) {
+    int id = heap[i];
+    while (i > 0) {
+      int p = (i - 1) / 2;
+      if (key[heap[p]] <= key[id]) break;
+      heap[i] = heap[p];
+      pos[heap[i]] = i;
+      i = p;
+    }
+    heap[i] = id;
+    pos[id] = i;
+  }
+
+  void down(int i) {
+    int id = heap[i];
+    while (true) {
+      int c = 2*i + 1;
+      if (c >= size) break;
+      if (c + 1 < size && key[heap[c + 1]] < key[heap[c]]) c++;
+      if (key[id] <= key[heap[c]]) break;
+      heap[i] = heap[c];
+      pos[heap[i]] = i;
+      i = c;
+    }
+    heap[i] = id;
+    pos[id] = i;
+  }
+}
@@ -0,0 +1,303 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// append-only log of the edits made to a saved wall set since its file
+//   was last written, so a crash loses (almost) nothing
+// each edit appends one small record (on WallSetWriter's thread, after
+//   any saves queued before it), instead of rewriting the whole file;
+//   loading the set replays the records on top of the file, and a
+//   finished save empties the log again
+// NOTE: each record is forced to disk before the next one is written,
+//   so a crash loses at most the edits still queued behind it (the
+//   ones made within a moment of the crash)
+// records (little-endian), identifying walls/points by coordinates:
+//   BASE  length crc         (first, as longs) the saved file the rest
+//                            go on top of
+//   ADD   x1 y1 x2 y2        wall added
+//   REM   x1 y1 x2 y2        wall removed
+//   MOVE  px py qx qy nx ny  point at p (other end of its wall at q)
+//                            moved to n
+//   SET   count, then x1 y1 x2 y2 of each wall
+//                            whole set of walls replaced (revert/undo)
+class Journal {
+  static final String FOLDER = WallSet.PATH_PREFIX + ".journal/";
+  static final byte ADD = 1, REM = 2, MOVE = 3, SET = 4, BASE = 5;
+
+  String name;  // name of the wall set's file
+  File file;
+
+  long seq = 0;  // records made so far (drawing thread)
+
+  // NOTE: only touched on the IO thread
+  FileChannel out;
+  long savedThrough = 0;  // records already included in the saved file
+
+  Journal(String name) {
+    this.name = name;
+    file = new File(FOLDER + name + ".journal");
+  }
+
+  // ==== recording (drawing thread) ==== //
+
+  void added(Wall w) {
+    append(record(ADD, 4).putFloat(w.p1.x).putFloat(w.p1.y)
+                         .putFloat(w.p2.x).putFloat(w.p2.y));
+  }
+
+  void removed(Wall w) {
+    append(record(REM, 4).putFloat(w.p1.x).putFloat(w.p1.y)
+                         .putFloat(w.p2.x).putFloat(w.p2.y));
+  }
+
+  // point p (which is now at its new position) moved from old
+  void moved(Point p, Point old) {
+    if (p.wall == null) return;
+    Point q = p.wall.p1 == p ? p.wall.p2 : p.wall.p1;
+    append(record(MOVE, 6).putFloat(old.x).putFloat(old.y).putFloat(q.x).putFloat(q.y)
+                          .putFloat(p.x).putFloat(p.y));
+  }
+
+  void replaced(Collection<Wall> walls) {
+    ByteBuffer rec = ByteBuffer.allocate(1 + 4 + walls.size() * 16)
+                               .order(ByteOrder.LITTLE_ENDIAN);
+    rec.put(SET).putInt(walls.size());
+    for (Wall w : walls) {
+      rec.putFloat(w.p1.x).putFloat(w.p1.y).putFloat(w.p2.x).putFloat(w.p2.y);
+    }
+    append(rec);
+  }
+
+  // everything so far is in the file (eg just reverted to it)
+  void clear() {
+    long through = seq;
+    WallSetWriter.IO.execute(() -> saved(through));
+  }
+
+  static ByteBuffer record(byte type, int floats) {
+    return ByteBuffer.allocate(1 + floats * 4).order(ByteOrder.LITTLE_ENDIAN).put(type);
+  }
+
+  void append(ByteBuffer rec) {
+    long s = ++seq;
+    rec.flip();
+    WallSetWriter.IO.execute(() -> write(s, rec));
+  }
+
+  // ==== writing (IO thread) ==== //
+
+  void write(long s, ByteBuffer rec) {
+    // a save that ran since this was queued already has this edit
+    if (s <= savedThrough) return;
+
+    try {
+      if (out == null) {
+        file.getParentFile().mkdirs();
+        out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                               StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      }
+      // a fresh log starts by saying which file it goes on top of
+      if (out.size() == 0) {
+        File saved = new File(WallSet.PATH_PREFIX + name);
+        ByteBuffer base = ByteBuffer.allocate(1 + 16).order(ByteOrder.LITTLE_ENDIAN);
+        base.put(BASE).putLong(saved.length()).putLong(checksum(saved)).flip();
+        while (base.hasRemaining()) out.write(base);
+      }
+      while (rec.hasRemaining()) out.write(rec);
+      out.force(false);
+    }
+    catch (IOException ioe) {
+      System.err.println("Failed to write journal " + file.getPath());
+      System.err.println("  " + ioe.getMessage());
+    }
+  }
+
+  // the saved file now includes every record up to "through"
+  void saved(long through) {
+    savedThrough = Math.max(savedThrough, through);
+    try {
+      if (out == null) Files.deleteIfExists(file.toPath());
+      else             out.truncate(0);
+    }
+    catch (IOException ioe) {
+      System.err.println("Failed to clear journal " + file.getPath());
+      System.err.println("  " + ioe.getMessage());
+    }
+  }
+
+  // CRC of a file's contents (0 if there isn't one)
+  static long checksum(File f) throws IOException {
+    CRC32 crc = new CRC32();
+    if (!f.exists()) return 0;
+    try ( FileChannel in = FileChannel.open(f.toPath(), StandardOpenOption.READ) ) {
+      ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+      while (in.read(buf) > 0) {
+        buf.flip();
+        crc.update(buf);
+        buf.clear();
+      }
+    }
+    return crc.getValue();
+  }
+
+  // ==== replaying (on load) ==== //
+
+  // applies any records left over (eg from a crash) to a wall set just
+  //   loaded from its file, returning how many there were
+  // NOTE: a record cut off partway (crash mid-write) ends the replay;
+  //   if the file isn't the one the records were made on top of (a
+  //   crash between saving it and clearing this), they're already in it,
+  //   so the log is dropped instead; records that don't fit the walls
+  //   are skipped
+  static int replay(WallSet ws) {
+    File f = new File(FOLDER + ws.name + ".journal");
+    if (!f.exists()) return 0;
+
+    ByteBuffer in;
+    try {
+      in = ByteBuffer.wrap(Files.readAllBytes(f.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+      if (in.remaining() >= 17 && in.get(0) == BASE) {
+        in.get();
+        File saved = new File(WallSet.PATH_PREFIX + ws.name);
+        if (in.getLong() != saved.length() || in.getLong() != checksum(saved)) {
+          System.out.println("Journal " + f.getPath() + " is already saved; dropping it");
+          Files.deleteIfExists(f.toPath());
+          return 0;
+        }
+      }
+    }
+    catch (IOException ioe) {
+      System.err.println("Could not read journal " + f.getPath());
+      System.err.println("  " + ioe.getMessage());
+      return 0;
+    }
+
+    Index index = new Index(ws);
+    int replayed = 0;
+    try {
+      while (in.hasRemaining()) {
+        byte type = in.get();
+        if      (type == ADD)  index.add(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+        else if (type == REM)  index.remove(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+        else if (type == MOVE) index.move(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat(),
+                                          in.getFloat(), in.getFloat());
+        else if (type == SET) {
+          int count = in.getInt();
+          if (count < 0 || count * 16L > in.remaining()) break;
+          index.clear();
+          for (int i = 0; i < count; i++) {
+            index.add(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+          }
+        }
+        else {
+          System.err.println("Unknown record in journal " + f.getPath());
+          break;
+        }
+        replayed++;
+      }
+    }
+    catch (BufferUnderflowException bue) {
+      System.err.println("Journal " + f.getPath() + " ends partway through a record");
+    }
+
+    if (replayed > 0) {
+      ws.wallsReplaced();
+      System.out.println("Replayed " + replayed + " unsaved edits to " + ws.name);
+    }
+    return replayed;
+  }
+
+  // the walls of a set being replayed onto, by their coordinates
+  // NOTE: so each record finds its wall without a scan of every wall;
+  //   walls with the same coordinates share a key and are told apart
+  //   by count (any of them will do, since they're the same), so a
+  //   wall that really is there twice stays there twice
+  static class Index {
+    WallSet ws;
+    Map<Key, List<Wall>> walls = new HashMap<>();
+
+    Index(WallSet ws) {
+      this.ws = ws;
+      for (Wall w : ws.walls) put(w);
+    }
+
+    void put(Wall w) {
+      walls.computeIfAbsent(new Key(w.p1.x, w.p1.y, w.p2.x, w.p2.y), k -> new ArrayList<>()).add(w);
+    }
+
+    // takes a wall from (x1, y1) to (x2, y2) out of the index, or
+    //   returns null if there isn't one
+    Wall take(float x1, float y1, float x2, float y2) {
+      List<Wall> list = walls.get(new Key(x1, y1, x2, y2));
+      if (list == null || list.isEmpty()) return null;
+      return list.remove(list.size() - 1);
+    }
+
+    void add(float x1, float y1, float x2, float y2) {
+      Wall w = new Wall(x1, y1, x2, y2);
+      ws.walls.add(w);
+      ws.points.add(w.p1);
+      ws.points.add(w.p2);
+      put(w);
+    }
+
+    void remove(float x1, float y1, float x2, float y2) {
+      Wall w = take(x1, y1, x2, y2);
+      if (w == null) return;
+      ws.walls.remove(w);
+      ws.points.remove(w.p1);
+      ws.points.remove(w.p2);
+    }
+
+    void move(float px, float py, float qx, float qy, float nx, float ny) {
+      Wall w = take(px, py, qx, qy);
+      Point p = w != null ? w.p1 : null;
+      if (w == null) {
+        w = take(qx, qy, px, py);
+        if (w != null) p = w.p2;
+      }
+      if (p == null) return;
+      p.x = nx;
+      p.y = ny;
+      put(w);
+    }
+
+    void clear() {
+      ws.walls.clear();
+      ws.points.clear();
+      walls.clear();
+    }
+  }
+
+  // wall coordinates as a map key (compared bit for bit, the way they
+  //   were written)
+  static class Key {
+    float[] coords;
+
+    Key(float x1, float y1, float x2, float y2) {
+      coords = new float[]{x1, y1, x2, y2};
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Key && Arrays.equals(coords, ((Key) other).coords);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(coords);
+    }
+  }
+}
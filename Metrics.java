@@ -0,0 +1,151 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// timing of each phase of a game tick (histograms of nanoTime deltas)
+//   plus counts of the work done in the hot loops, for finding where
+//   frame time goes
+// NOTE: everything is skipped unless enabled, so when it's off the
+//   cost is one static boolean check per phase
+class Metrics {
+  static volatile boolean enabled = false;
+
+  // work counters, shared by every game (and thread)
+  static final LongAdder intersectionTests = new LongAdder();  // wall vs path
+  static final LongAdder nodeExpansions = new LongAdder();     // search steps
+
+  // phases of a tick, as timed
+  static final int PLAYER_MOVE = 0, GRAPH_SYNC = 1, WALL_CONNECTIONS = 2,
+                   GHOST_CONNECTIONS = 3, GHOST_MOVE = 4, FIND_DIRECTIONS = 5,
+                   DISPLAY = 6, TICK = 7, SWARM_MOVE = 8;
+  static final String[] PHASES = {
+    "player.move", "graph.sync", "updateWallConnections",
+    "updateGhostConnections", "ghost.move", "findDirections",
+    "display", "tick", "swarm.move"
+  };
+
+  Histogram[] phases = new Histogram[PHASES.length];
+
+  Metrics() {
+    for (int i = 0; i < phases.length; i++) phases[i] = new Histogram();
+  }
+
+  static void countTests(int n) {
+    if (enabled) intersectionTests.add(n);
+  }
+
+  static void countExpansion() {
+    if (enabled) nodeExpansions.increment();
+  }
+
+  // start of something to time: pass the result to end()
+  long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  // records the time since start under a phase, returning the time
+  //   now (so it can start the next phase)
+  long end(int phase, long start) {
+    if (!enabled || start == 0) return 0;
+    long now = System.nanoTime();
+    phases[phase].record(now - start);
+    return now;
+  }
+
+  void reset() {
+    for (Histogram h : phases) h.reset();
+    intersectionTests.reset();
+    nodeExpansions.reset();
+  }
+
+  // writes a summary line per phase, the counters, then every non-empty
+  //   bucket of every histogram (for plotting elsewhere)
+  boolean export(File f) {
+    try ( PrintWriter out = new PrintWriter(f) ) {
+      out.println("phase,count,mean_ns,p50_ns,p90_ns,p99_ns,p999_ns,max_ns");
+      for (int i = 0; i < phases.length; i++) {
+        Histogram h = phases[i];
+        out.println(String.format(Locale.ROOT, "%s,%d,%.0f,%d,%d,%d,%d,%d",
+          PHASES[i], h.count, h.mean(), h.percentile(0.5), h.percentile(0.9),
+          h.percentile(0.99), h.percentile(0.999), h.max));
+      }
+      out.println();
+      out.println("counter,total");
+      out.println("intersection_tests," + intersectionTests.sum());
+      out.println("node_expansions," + nodeExpansions.sum());
+      out.println();
+      out.println("phase,bucket_low_ns,bucket_high_ns,count");
+      for (int i = 0; i < phases.length; i++) {
+        Histogram h = phases[i];
+        for (int b = 0; b < h.counts.length; b++) {
+          if (h.counts[b] == 0) continue;
+          out.println(PHASES[i] + "," + Histogram.low(b) + "," + Histogram.low(b + 1) + "," + h.counts[b]);
+        }
+      }
+    }
+    catch (FileNotFoundException fnfe) {
+      System.err.println("Failed to export metrics to " + f.getPath());
+      System.err.println("  " + fnfe.getMessage());
+      return false;
+    }
+    System.out.println("Exported metrics to " + f.getPath());
+    return true;
+  }
+
+  // log-linear histogram in the style of HdrHistogram: values under 16
+  //   get a bucket each, and every power of two above that is split
+  //   into 16 buckets, so any value is within ~6% of its bucket, in a
+  //   fixed ~1000 longs, with no allocation when recording
+  static class Histogram {
+    static final int SUB_BITS = 4, SUB = 1 << SUB_BITS;
+
+    long[] counts = new long[(64 - SUB_BITS + 1) * SUB];
+    long count, total, max;
+
+    static int bucket(long v) {
+      if (v < SUB) return (int) Math.max(0, v);
+      int e = 63 - Long.numberOfLeadingZeros(v);
+      int sub = (int) (v >>> (e - SUB_BITS)) & (SUB - 1);
+      return (e - SUB_BITS + 1) * SUB + sub;
+    }
+
+    // smallest value that goes in bucket b
+    static long low(int b) {
+      if (b < SUB) return b;
+      int e = b / SUB + SUB_BITS - 1;
+      return (long) (SUB + b % SUB) << (e - SUB_BITS);
+    }
+
+    void record(long v) {
+      counts[bucket(v)]++;
+      count++;
+      total += v;
+      if (v > max) max = v;
+    }
+
+    void reset() {
+      Arrays.fill(counts, 0);
+      count = total = max = 0;
+    }
+
+    double mean() {
+      return count == 0 ? 0 : (double) total / count;
+    }
+
+    // value that fraction p of recordings are at or below (the middle
+    //   of its bucket)
+    long percentile(double p) {
+      if (count == 0) return 0;
+      long wanted = Math.max(1, (long) Math.ceil(p * count));
+      long seen = 0;
+      for (int b = 0; b < counts.length; b++) {
+        seen += counts[b];
+        if (seen >= wanted) return Math.min(max, (low(b) + low(b + 1) - 1) / 2);
+      }
+      return max;
+    }
+  }
+}
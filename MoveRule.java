@@ -1,9 +1,18 @@
 import java.util.*;
+import java.util.function.Function;
 
 
 // interface allowing specification of movement rules
 interface MoveRule {
   void move(Mover m);
+  
+  // runs a route search for m, timing it as findDirections (see Metrics)
+  static List<Point> timed(Mover m, Function<Mover, List<Point>> search) {
+    long start = m.sim.metrics.start();
+    List<Point> directions = search.apply(m);
+    m.sim.metrics.end(Metrics.FIND_DIRECTIONS, start);
+    return directions;
+  }
 }
 
 // rule where no movement is ever done
@@ -17,7 +26,7 @@ class StandStill implements MoveRule {
 // rule to move in random direction at all times
 class RandomMovement implements MoveRule {
   public void move(Mover m) {
-    double angle = Math.random() * Math.PI * 2;
+    double angle = m.sim.random.nextDouble() * Math.PI * 2;
     m.moveTo(m.x + Math.cos(angle) * m.speed,
              m.y + Math.sin(angle) * m.speed);
   }
@@ -42,36 +51,81 @@ class MoveTo implements MoveRule {
   }
 }
 
-class breadthFirstSearch implements MoveRule{
+// shared layer for MoveRules that plan a whole route to a target
+//   with findDirections and then follow it
+// the route is kept in the Mover (directions, with index as progress)
+//   and only planned again when the graph changes (a wall edit), the
+//   set of points that can see the target changes, or the mover itself
+//   comes into or goes out of sight of the target, instead of
+//   searching again every frame
+abstract class CachedRoute implements MoveRule {
+	// how close counts as having reached a waypoint
+	static final float REACHED = 0.01f;
+	
 	Point player;
 	
-	breadthFirstSearch(Point target) {
+	CachedRoute(Point target) {
 		this.player = target;
 	}
 	
+	// route from m to player; may or may not start with m itself
+	abstract List<Point> findDirections(Mover m);
+	
 	public void move(Mover m) {
-		m.directions = findDirections(m);
+		int graphVersion = m.sim.ws.graph.version;
+		boolean seesTarget = m.connections.contains(player);
+		if(m.routeGraph != graphVersion || m.routeTarget != player.connectionsVersion
+		   || m.routeSeesTarget != seesTarget) {
+			m.directions = MoveRule.timed(m, this::findDirections);
+			if(m.directions.size() > 0 && m.directions.get(0) == m) m.directions.remove(0);
+			m.index = 0;
+			m.routeGraph = graphVersion;
+			m.routeTarget = player.connectionsVersion;
+			m.routeSeesTarget = seesTarget;
+		}
 		if(m.directions.size() == 0) return;
-		m.moveTo(m.directions.get(1));
+		
+		// move on to the next waypoint once this one is reached
+		while(m.index < m.directions.size() - 1 && m.distTo(m.directions.get(m.index)) < REACHED) m.index++;
+		
+		float oldX = m.x, oldY = m.y;
+		m.moveTo(m.directions.get(m.index));
+		// stuck short of the waypoint; plan again next time
+		if(m.x == oldX && m.y == oldY && m.distTo(m.directions.get(m.index)) >= REACHED) m.routeGraph = -1;
+	}
+}
+
+class breadthFirstSearch extends CachedRoute{
+	breadthFirstSearch(Point target) {
+		super(target);
 	}
 	
 	// doesn't need to account for distance, just amount of nodes
+	// NOTE: runs over the compact (int id) form of the graph, with a
+	//   visited bitmap and parent array; the path is only built once,
+	//   from the parent array, at the end
 	public List<Point> findDirections(Mover m){ 
-	    Deque<List<Point>> queue = new ArrayDeque<>();
-	    List<Point> list = new ArrayList<>();
-	    list.add(m);
-	    queue.add(list);
-	    while(!queue.isEmpty()){
-	        List<Point> path = queue.remove();
-	        Point recentNode = path.get(path.size() -1);
-	        
-	        // System.out.println(path);
-	        if(recentNode == player) return path;
-	        for(Point p: recentNode.connections){
-	            List<Point> copyList = new ArrayList<>(path);
-	            if(copyList.contains(p)) continue;
-	            copyList.add(p);
-	            queue.add(copyList);
+	    CompactGraph.Query q = m.sim.ws.graph.compact().query(m, player);
+	    int[] parent = new int[q.count()];
+	    boolean[] visited = new boolean[q.count()];
+	    int[] queue = new int[q.count()];
+	    int[] next = new int[q.maxDegree()];
+	    
+	    int head = 0, tail = 0;
+	    queue[tail++] = q.source;
+	    visited[q.source] = true;
+	    parent[q.source] = -1;
+	    
+	    while(head < tail){
+	        int recentNode = queue[head++];
+	        int n = q.neighbours(recentNode, next, null);
+	        for(int k = 0; k < n; k++){
+	            int p = next[k];
+	            if(visited[p]) continue;
+	            visited[p] = true;
+	            parent[p] = recentNode;
+	            if(p == q.goal) return q.pathTo(parent, p, true);
+	            queue[tail++] = p;
 	        }
 	    }
 	    return new ArrayList<>();
@@ -87,7 +141,7 @@ class depthFirstSearch implements MoveRule{
 	
 	public void move(Mover m) {
 		if(m.directions.size() <= 1) { // probably shoudlve made a variable for m.directions, 
-			m.directions = findDirections(m); // like i made one called current which i only use twice
+			m.directions = MoveRule.timed(m, this::findDirections); // like i made one called current which i only use twice
 			m.index = 1;
 		}
 		if(m.directions.size() == 0) return; // im ngl idk if this even does anything but it's useful	
@@ -96,34 +150,40 @@ class depthFirstSearch implements MoveRule{
 		if(m.distTo(current) == 0 && m.index < m.directions.size() - 1) m.index++;
 		m.moveTo(current);
 		if(m.index == m.directions.size() - 1  && !m.connections.contains(player)) {
-			m.directions = findDirections(m);
+			m.directions = MoveRule.timed(m, this::findDirections);
 			m.index = 1;
 		}
 	}
 
 	List<Point> findDirections(Mover m){
-		Deque<List<Point>> stack = new ArrayDeque<>();
-	    List<Point> list = new ArrayList<>();
-	    HashSet<Point> visited = new HashSet<>();
-	    list.add(m);
-	    stack.push(list);
-	    
-	    while(!stack.isEmpty()){
-	    	List<Point> path = stack.remove();
-	    	Point recentNode = path.get(path.size() -1);
-	    	
-	    	if(visited.contains(recentNode)) continue;
-	    	visited.add(recentNode);
-	    	if(recentNode == player) return path;
-	    	
-	    	for(Point p: recentNode.connections){
-	            List<Point> copyList = new ArrayList<>(path);
-	            if(copyList.contains(p)) continue;
-	            copyList.add(p);
-	            stack.push(copyList);
-	        }
-	    }
-	    return new ArrayList<>();
+		CompactGraph.Query q = m.sim.ws.graph.compact().query(m, player);
+		int[] parent = new int[q.count()];
+		boolean[] visited = new boolean[q.count()];
+		int[] next = new int[q.maxDegree()];
+		// stack of (node, node it was pushed from) pairs
+		int[] stack = new int[2 * (q.edgeCount() + 1)];
+		int top = 0;
+		
+		stack[top++] = q.source;
+		stack[top++] = -1;
+		
+		while(top > 0){
+			int from = stack[--top];
+			int recentNode = stack[--top];
+			
+			if(visited[recentNode]) continue;
+			visited[recentNode] = true;
+			parent[recentNode] = from;
+			if(recentNode == q.goal) return q.pathTo(parent, recentNode, true);
+			
+			int n = q.neighbours(recentNode, next, null);
+			for(int k = 0; k < n; k++){
+				if(visited[next[k]]) continue;
+				stack[top++] = next[k];
+				stack[top++] = recentNode;
+			}
+		}
+		return new ArrayList<>();
 	}
 }
 
@@ -136,7 +196,7 @@ class RandomizedMovement implements MoveRule {
 	
 	public void move(Mover m) {
 		if(m.directions.size() <= 1) {
-			m.directions = findDirections(m);
+			m.directions = MoveRule.timed(m, this::findDirections);
 			m.index = 1;
 		}
 		if(m.directions.size() == 0) return;
@@ -144,28 +204,35 @@ class RandomizedMovement implements MoveRule {
 		Point current = m.directions.get(m.index);
 		if(m.distTo(current) == 0 && m.index < m.directions.size() - 1) m.index++;
 		if(m.index == m.directions.size() - 1 && !m.connections.contains(player)) {
-			m.directions = findDirections(m);
+			m.directions = MoveRule.timed(m, this::findDirections);
 			m.index = 1;
 		}
 		m.moveTo(current);
 	}
 	
 	public List<Point> findDirections(Mover m){
-		List<Point> path = new ArrayList<>();
-		HashSet<Point> visited = new HashSet<>();
-		Point point = m;
+		CompactGraph.Query q = m.sim.ws.graph.compact().query(m, player);
+		int[] parent = new int[q.count()];
+		boolean[] visited = new boolean[q.count()];
+		int[] next = new int[q.maxDegree()];
+		
+		int point = q.source;
+		parent[point] = -1;
+		visited[point] = true;
 		while(true) {
-			path.add(point);
-			if(point == player) return path;
-			List<Point> points = new ArrayList<>();
-			for(Point n: point.connections) {
-				if(visited.contains(n)) continue;
-				points.add(n);
+			if(point == q.goal) return q.pathTo(parent, point, true);
+			
+			// keep only unvisited neighbours
+			int n = q.neighbours(point, next, null);
+			int options = 0;
+			for(int k = 0; k < n; k++) {
+				if(!visited[next[k]]) next[options++] = next[k];
 			}
-			if(points.size() == 0) break;
-			Point random = points.get((int) (Math.random() * points.size()));
+			if(options == 0) break;
+			int random = next[m.sim.random.nextInt(options)];
+			parent[random] = point;
 			point = random;
-			visited.add(random);
+			visited[random] = true;
 		}
 		
 		return new ArrayList<>();
@@ -173,86 +240,86 @@ class RandomizedMovement implements MoveRule {
 	
 }
 
-class Dijkstra implements MoveRule{
-	Point player;
-	
+class Dijkstra extends CachedRoute{
 	Dijkstra(Point target) {
-		this.player = target;
+		super(target);
 	}
 	// indentation got weird, makes me sad.
-	  public void move(Mover m) {
-			m.directions = findDirections(m);
-			if(m.directions.size() == 0) return;
-			if(m.distTo(m.directions.get(0)) == 0 && m.directions.size() > 2) m.directions.remove(0);
-			m.moveTo(m.directions.get(0));
-	  }
 	  
 	  public List<Point> findDirections(Mover m){
-		  PriorityQueue<Step> paths = new PriorityQueue<>();
-		  HashSet<Point> visited = new HashSet<>();
-		  paths.add(new Step(m, 0, new ArrayList<>()));
+		  CompactGraph.Query q = m.sim.ws.graph.compact().query(m, player);
+		  return shortestPath(q, false);
+	  }
+	  
+	  // path from source (not included) to goal (included) with the
+	  //   smallest total length, or empty if there is none; shared with
+	  //   A*, which is the same search steered by a heuristic
+	  static List<Point> shortestPath(CompactGraph.Query q, boolean useHeuristic) {
+		  IndexedHeap paths = new IndexedHeap();
+		  double[] dist = new double[q.count()];
+		  int[] parent = new int[q.count()];
+		  boolean[] visited = new boolean[q.count()];
+		  int[] next = new int[q.maxDegree()];
+		  float[] w = new float[q.maxDegree()];
+		  
+		  parent[q.source] = -1;
+		  paths.push(q.source, useHeuristic ? q.distToGoal(q.source) : 0);
 		  
-	      while(paths.size() > 0) {
-	    	  Step s = paths.poll();
-	    	  if(s.to == player) return s.directions;
-	    	  if(visited.contains(s.to)) continue;
-	    	  visited.add(s.to);
+	      while(!paths.isEmpty()) {
+	    	  int s = paths.pop();
+	    	  if(s == q.goal) return q.pathTo(parent, s, false);
+	    	  visited[s] = true;
 	        	
-	    	  for(Point n2: s.to.connections) {
+	    	  int n = q.neighbours(s, next, w);
+	    	  for(int k = 0; k < n; k++) {
+	    		  int n2 = next[k];
+	    		  if(visited[n2]) continue;
 	    		  
-	    		  float n2Dist = (float) (s.dist + s.to.distTo(n2)); 
-	        	  // System.out.println(n2Dist);
-	        	  List<Point> n2Dir = new ArrayList<>(s.directions);
-	        	  n2Dir.add(n2);
-	        	  paths.add(new Step(n2, n2Dist, n2Dir));
+	    		  double n2Dist = dist[s] + w[k];
+	    		  // first time seen, or found a shorter way there
+	    		  if(!paths.contains(n2) || n2Dist < dist[n2]) {
+	    			  dist[n2] = n2Dist;
+	    			  parent[n2] = s;
+	    			  paths.push(n2, useHeuristic ? n2Dist + q.distToGoal(n2) : n2Dist);
+	    		  }
 	    	  }
 	       }
 		  return new ArrayList<>();
 	  }
 }
 
-class Step implements Comparable<Step>{
-    Point to;
-    float dist;
-    List<Point> directions = new ArrayList<>();
-    
-    Step(Point t, float d) {
-        to = t;
-        dist = d;
-    }
-    
-    Step(Point t, float d, List<Point> dir) {
-        to = t;
-        dist = d;
-        directions = dir;
-    }
-    
-    public int compareTo(Step other) {
-    	if(this.dist < other.dist) return -1;
-    	if(this.dist > other.dist) return 1;
-    	return 0;
-    }
-    
+// A*: like Dijkstra, but always expands the node with the smallest
+//   (distance so far + straight-line distance left to the target), so
+//   it heads toward the target instead of spreading out evenly
+// NOTE: straight-line distance never overestimates the real distance
+//   (and obeys the triangle inequality), so paths are still shortest
+class AStar extends CachedRoute {
+	AStar(Point target) {
+		super(target);
+	}
+	
+	// path from m (not included) to player (included), or empty if
+	//   there is none
+	public List<Point> findDirections(Mover m) {
+		CompactGraph.Query q = m.sim.ws.graph.compact().query(m, player);
+		return Dijkstra.shortestPath(q, true);
+	}
 }
 
-/*
-    void dijkstra(Node start) {
-        PriorityQueue<Step> toTake = new PriorityQueue<>();
-        purple.clear();
-        green.clear();
-        toTake.add(new Step(null, start, 0));
-        
-        while(toTake.size() > 0) {
-        	Step s = toTake.poll();
-        	Node n = s.to;
-        	if(purple.containsKey(n)) continue;
-        	purple.put(n, s.from);
-        	
-        	for(Node n2: n.neighbors) {
-        		float n2Dist = s.dist + dist(n.x, n.y, n2.x, n2.y); 
-        		toTake.add(new Step(n, n2, n2Dist));
-        	}
-        }
-    }
- */
-
+// follows a DistanceField to the target shared by every FlowField
+//   Mover in the game, so there is one search per tick however many
+//   Movers are chasing, and each one just picks the best point it can
+//   see
+class FlowField implements MoveRule {
+	Point player;
+	
+	FlowField(Point target) {
+		this.player = target;
+	}
+	
+	public void move(Mover m) {
+		DistanceField field = m.sim.fieldTo(player);
+		Point next = field.next(m);
+		if(next != null) m.moveTo(next);
+	}
+}
@@ -45,22 +45,49 @@ public class Mover extends Point {
   float hue;
   List<Point> directions = new ArrayList<>();
   int index = 0; // used only for dijkstra and dfs when displaying connections yknow
+  // graph/target versions the current directions were planned
+  //   against, and whether it could see the target then (see
+  //   CachedRoute)
+  int routeGraph = -1, routeTarget = -1;
+  boolean routeSeesTarget;
   
-  // Mover must remember its Pathfinder instance so it can
-  //   move without crashing into walls
-  Pathfinder pf;
+  // Mover must remember its Simulation so it can move without
+  //   crashing into walls
+  Simulation sim;
+  // which wall points this can see, kept up to date cheaply
+  MoverVisibility visibility;
+  // set when connections should next be brought up to date
+  boolean connectionsDue;
+  // kept so checking for crashes allocates nothing
+  RayCast ray = new RayCast();
   
   // default mover doesn't actually move
-  Mover(Pathfinder pf) {
-    this(pf, new StandStill());
+  Mover(Simulation sim) {
+    this(sim, new StandStill());
   }
   
-  // mover with specific movement system/pattern
-  Mover(Pathfinder pf, MoveRule rule) {
-    super(pf);
-    this.pf = pf;
+  // mover with specific movement system/pattern, somewhere random
+  Mover(Simulation sim, MoveRule rule) {
+    super(sim.random.nextFloat() * sim.width, sim.random.nextFloat() * sim.height);
+    this.sim = sim;
     this.rule = rule;
-    hue = (float) (Math.random() * 360);
+    hue = sim.random.nextFloat() * 360;
+  }
+  
+  // brings connections up to date with the wall points this can see,
+  //   if they're due (see Simulation.updateGhostConnections)
+  // NOTE: ghosts' rules call this just before they look at connections
+  //   (a search from the ghost, or a flow field step), so ghosts whose
+  //   rules never look don't pay for keeping them up to date
+  void updateConnections() {
+    if (!connectionsDue) return;
+    connectionsDue = false;
+    visibility().update(null);
+  }
+
+  MoverVisibility visibility() {
+    if (visibility == null) visibility = new MoverVisibility(this, sim.ws);
+    return visibility;
   }
   
   // movement is based on the rule/system of movement
@@ -93,41 +120,25 @@ public class Mover extends Point {
       dy *= speed / d;
     }
     
-    Point target = new Point(x + dx, y + dy);
-    Point crashPoint = crashCheck(target);
+    double t = crashCheck(x + dx, y + dy);
     
     // move to target if nothing blocks it
-    if (crashPoint == null) {
+    if (Double.isNaN(t)) {
       x += dx;
       y += dy;
     }
     // move halfway to blockage, unless within 0.5px already
-    else if (this.distTo(crashPoint) >= 0.5) {
-      x = (x + crashPoint.x) / 2;
-      y = (y + crashPoint.y) / 2;
+    else if (t * Math.sqrt(dx*dx + dy*dy) >= 0.5) {
+      x += t * dx / 2;
+      y += t * dy / 2;
     }
   }
   
-  // returns closest Point that would be crashed into by
-  //   moving to target, or null if movement is unblocked
-  Point crashCheck(Point target) {
-    Point closest = null;
-    double closestD = Double.MAX_VALUE;
-    
-    List<Point> crashes = pf.wsCurr.intersections(this, target);
-    
-    // get closest among all potential crashes
-    for (Point crash : crashes) {
-        
-      double crashD = this.distTo(crash);
-      
-      // get closest result
-      if (crashD < closestD) {
-        closest = crash;
-        closestD = crashD;
-      }
-    }
-    return closest;
+  // returns how far along the way to (x2, y2) the first crash into a
+  //   wall would be (0 = here, 1 = there), or NaN if movement is
+  //   unblocked
+  double crashCheck(float x2, float y2) {
+    return sim.ws.rayCast(x, y, x2, y2, sim.ws.buffer.slotOf(wall), -1, ray);
   }
   
   @Override
@@ -139,10 +150,10 @@ public class Mover extends Point {
 }
 
 // special Mover which is displayed differently and
-//   always follows the mouse
+//   always follows a target (the mouse, when playing)
 class Player extends Mover {
-  Player(Pathfinder pf) {
-    super(pf, new MoveTo(pf.mouse));
+  Player(Simulation sim, Point target) {
+    super(sim, new MoveTo(target));
   }
   
   @Override
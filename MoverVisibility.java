@@ -0,0 +1,162 @@
+// keeps a Mover's connections to wall points up to date without testing
+//   every point every time: each point gets a "safe distance", and its
+//   visibility is only tested again once the mover has moved that far
+//   from where it was last tested
+// NOTE: why that's safe: say the mover was tested from c, and no wall
+//   comes within d of c. Moving anywhere within d of c (in a straight
+//   line, since nothing's in the way), the line from the mover to p
+//   stays inside the cone from p around that circle, and whether it
+//   is blocked can only change when a wall end passes over that line;
+//   so p's visibility can't change until a wall end could be inside
+//   the cone. The safe distance is the biggest d with no wall within d
+//   of c and no wall end in the cone (shrunk a bit, since the cone is
+//   slightly wider than the line it's measured from)
+class MoverVisibility implements WallGrid.CellXYVisitor, WallGrid.IndexVisitor {
+  // the cone is at most ~1.155x as wide as d*t when d <= half the
+  //   distance to p; this keeps a margin on top of that
+  static final float SHRINK = 0.85f;
+
+  Mover m;
+  WallSet ws;
+
+  // ws.changes and graph version when pts was taken (rebuilding the
+  //   graph also drops links to the mover from the points' side)
+  int wallsVersion = -1, graphVersion = -1;
+  Point[] pts;            // every wall point, as of then
+  // per point: where it was last tested from, how far the mover can
+  //   get from there before testing again, and what the result was
+  float[] cx, cy, safe;
+  boolean[] seen;
+
+  // the point safeDistance is working on, and the best bound so far
+  //   (kept here so walking the grid doesn't allocate)
+  float px, py, ex, ey, len2, best;
+  int own;
+
+  MoverVisibility(Mover m, WallSet ws) {
+    this.m = m;
+    this.ws = ws;
+  }
+
+  // tests again every point the mover may have changed visibility of,
+  //   reporting (and keeping m.connections up to date with) any that did
+  // NOTE: changed may be null when only m.connections is wanted
+  void update(Listener changed) {
+    if (pts == null || wallsVersion != ws.changes || graphVersion != ws.graph.version) {
+      rebuild(changed);
+      return;
+    }
+
+    float x = m.x, y = m.y;
+    for (int i = 0; i < pts.length; i++) {
+      float dx = x - cx[i], dy = y - cy[i];
+      if (dx*dx + dy*dy < safe[i] * safe[i]) continue;
+      test(i, changed);
+    }
+  }
+
+  // something told about each point that came into or out of view
+  interface Listener {
+    void changed(Point p, boolean visible);
+  }
+
+  // walls were edited: start over with every point
+  void rebuild(Listener changed) {
+    // drop connections to points that are gone or that may have changed
+    if (pts != null) {
+      for (int i = 0; i < pts.length; i++) {
+        if (seen[i]) {
+          m.connections.remove(pts[i]);
+          if (changed != null) changed.changed(pts[i], false);
+        }
+      }
+    }
+
+    pts = ws.points.toArray(new Point[0]);
+    cx = new float[pts.length];
+    cy = new float[pts.length];
+    safe = new float[pts.length];
+    seen = new boolean[pts.length];
+    wallsVersion = ws.changes;
+    graphVersion = ws.graph.version;
+    for (int i = 0; i < pts.length; i++) test(i, changed);
+  }
+
+  void test(int i, Listener changed) {
+    Point p = pts[i];
+    boolean visible = ws.isClearPath(m, p, m.ray);
+    cx[i] = m.x;
+    cy[i] = m.y;
+    safe[i] = safeDistance(p);
+
+    if (visible != seen[i]) {
+      seen[i] = visible;
+      if (visible) m.connections.add(p);
+      else         m.connections.remove(p);
+      if (changed != null) changed.changed(p, visible);
+    }
+  }
+
+  // how far the mover can go before its view of p could change (see
+  //   above), checking the ends of walls near the line from it to p
+  // NOTE: walls further than a cell away from the line aren't looked
+  //   at, so this never goes over CELL_SIZE (times SHRINK)
+  float safeDistance(Point p) {
+    px = p.x;
+    py = p.y;
+    ex = m.x - px;
+    ey = m.y - py;
+    len2 = ex*ex + ey*ey;
+    if (len2 == 0) return 0;
+
+    best = Math.min(WallGrid.CELL_SIZE, (float) Math.sqrt(len2) / 2);
+    own = ws.buffer.slotOf(p.wall);
+    ws.grid.walkXY(m.x, m.y, px, py, this);
+    return best * SHRINK;
+  }
+
+  // each cell the line from the mover to p crosses: look at it and the
+  //   cells around it (as WallGrid.walkNear does)
+  public boolean visit(int cx, int cy) {
+    return ws.grid.visitNear(cx, cy, this);
+  }
+
+  // each of those cells: tighten best by the walls in it
+  public boolean visit(int index) {
+    WallBuffer buf = ws.buffer;
+    int[] ids = ws.grid.cells[index];
+    for (int k = ws.grid.counts[index] - 1; k >= 0; k--) {
+      int s = ids[k];
+      if (s == own) continue;  // p's own wall never blocks it
+      best = Math.min(best, distance(m.x, m.y, buf.x1[s], buf.y1[s], buf.x2[s], buf.y2[s]));
+      best = Math.min(best, bound(buf.x1[s], buf.y1[s], px, py, ex, ey, len2));
+      best = Math.min(best, bound(buf.x2[s], buf.y2[s], px, py, ex, ey, len2));
+    }
+    return true;
+  }
+
+  // distance from (x, y) to segment (x1, y1)-(x2, y2)
+  static float distance(float x, float y, float x1, float y1, float x2, float y2) {
+    float sx = x2 - x1, sy = y2 - y1, qx = x - x1, qy = y - y1;
+    float len2 = sx*sx + sy*sy;
+    float t = len2 == 0 ? 0 : Math.max(0, Math.min(1, (qx*sx + qy*sy) / len2));
+    float dx = qx - t*sx, dy = qy - t*sy;
+    return (float) Math.sqrt(dx*dx + dy*dy);
+  }
+
+  // how far the mover can go before the cone from p reaches wall end
+  //   (wx, wy): its distance from the line p->mover, over how far along
+  //   the line it is (the cone widens from nothing at p)
+  float bound(float wx, float wy, float px, float py, float ex, float ey, float len2) {
+    float qx = wx - px, qy = wy - py;
+    float t = (qx*ex + qy*ey) / len2;
+    if (t <= 0) return Float.MAX_VALUE;  // behind p; the cone never gets there
+    // the end of a wall doesn't block until BUFFER in from the end
+    if (t >= 1) {
+      float dx = qx - ex, dy = qy - ey;
+      return Math.max(0, (float) Math.sqrt(dx*dx + dy*dy) - Wall.BUFFER);
+    }
+    float h = Math.abs(qx*ey - qy*ex) / (float) Math.sqrt(len2);
+    return Math.max(0, h - Wall.BUFFER) / t;
+  }
+}
@@ -1,6 +1,7 @@
 import java.io.File;
 import java.util.*;
 import processing.core.*;
+import processing.event.MouseEvent;
  
 public class Pathfinder extends PApplet {
   
@@ -14,7 +15,10 @@ public class Pathfinder extends PApplet {
   // WallSets are primary containers for the "map" that's edited
   //   and played on
   // wsCurr is always updated to refer to the current WallSet
-  ArrayList<WallSet> wsList = new ArrayList<>();
+  // NOTE: the list holds handles that load their files in the
+  //   background; only the current set and its neighbours are loaded
+  //   ahead of time (see prefetchAround)
+  ArrayList<WallSetHandle> wsList = new ArrayList<>();
   int wsIndex = 0;
   WallSet wsCurr;
   
@@ -22,6 +26,11 @@ public class Pathfinder extends PApplet {
   //   represent the mouse, moving objects in a game, etc
   Point mouse = new Point(0,0);
   
+  // which part of the world is on screen (shared by both modes)
+  Camera camera = new Camera();
+  // walls of wsCurr, only drawn again when they (or the view) change
+  WallLayer wallLayer = new WallLayer();
+  
   // mode control variables
   Mode[] modes = new Mode[]{new BuildMode(), new PlayMode()};
   final int BUILD_MODE = 0;
@@ -36,10 +45,21 @@ public class Pathfinder extends PApplet {
     colorMode(HSB, 360, 100, 100, 100);
     
     loadWallSets();
-    wsCurr = wsList.get(0);
+    
+    // first set that actually loads, dropping any that don't
+    while (wsCurr == null && !wsList.isEmpty()) {
+      prefetchAround(0);
+      wsCurr = wsList.get(0).get();
+      if (wsCurr == null) wsList.remove(0);
+    }
+    if (wsCurr == null) {
+      System.out.println("No valid files in wallsets folder.");
+      wsCurr = new WallSet();
+      wsList.add(new WallSetHandle(wsCurr));
+    }
   }
   
-  // loads all valid wallsets in folder
+  // finds all wallsets in folder (they're only read once needed)
   void loadWallSets() {
     File folder = new File("wallsets/");
     
@@ -51,28 +71,30 @@ public class Pathfinder extends PApplet {
       }
       
       System.out.println("Loading from wallsets folder:");
-      for (File wsFile : folder.listFiles()) {
-        if (!wsFile.isDirectory()) {
-          WallSet ws = WallSet.fromFile(wsFile);
-          if (ws != null) wsList.add(ws);
-        }
-      }
-      if (wsList.isEmpty()) {
-        System.out.println("No valid files in wallsets folder.");
+      for (File wsFile : files) {
+        // NOTE: .wallsb files are read as binary, anything else as JSON
+        if (!wsFile.isDirectory()) wsList.add(new WallSetHandle(wsFile));
       }
     }
     else {
       System.err.println("Couldn't find wallsets folder! Should be at " +
                          folder.getAbsolutePath());
     }
-    
-    if (wsList.isEmpty()) wsList.add(new WallSet());
+  }
+  
+  // starts loading the set at index and the ones either side of it,
+  //   so browsing with the arrow keys rarely has to wait
+  void prefetchAround(int index) {
+    int n = wsList.size();
+    if (n == 0) return;
+    wsList.get(index).prefetch();
+    wsList.get((index + 1) % n).prefetch();
+    wsList.get((index + n - 1) % n).prefetch();
   }
   
   public void draw() {
     // keep mouse Point updated
-    mouse.x = mouseX;
-    mouse.y = mouseY;
+    updateMouse();
  
     // draw based on mode
     if (0 <= modeIndex && modeIndex < modes.length) {
@@ -119,18 +141,40 @@ public class Pathfinder extends PApplet {
     }
   }
   
+  // mouse Point is where the mouse is in the world, not the window
+  void updateMouse() {
+    mouse.x = camera.worldX(mouseX);
+    mouse.y = camera.worldY(mouseY);
+  }
+  
+  // middle button drags the view around in both modes, so it isn't
+  //   passed on
   public void mousePressed() {
+    updateMouse();
+    if (mouseButton == CENTER) return;
     if (0 <= modeIndex && modeIndex < modes.length) {
       modes[modeIndex].mousePressed();
     }
   }
   
   public void mouseDragged() {
+    if (mouseButton == CENTER) {
+      camera.pan(mouseX - pmouseX, mouseY - pmouseY);
+      camera.limit(width, height);
+      return;
+    }
+    updateMouse();
     if (0 <= modeIndex && modeIndex < modes.length) {
       modes[modeIndex].mouseDragged();
     }
   }
   
+  // mouse wheel zooms in/out around the mouse
+  public void mouseWheel(MouseEvent event) {
+    camera.zoomAt(mouseX, mouseY, (float) Math.pow(1.1, -event.getCount()));
+    camera.limit(width, height);
+  }
+  
   public void mouseReleased() {
     if (0 <= modeIndex && modeIndex < modes.length) {
       modes[modeIndex].mouseReleased();
@@ -177,12 +221,15 @@ public class Pathfinder extends PApplet {
       //     representing the program
       //   (as an inner class, members of BuildMode are part of a
       //     BuildMode instance AND part of a Pathfinder instance)
-      wsCurr.display(Pathfinder.this);
+      wallLayer.display(Pathfinder.this, wsCurr, camera);
       
       // draw last point and line connecting it to mouse
       if (lastPoint != null) {
+        pushMatrix();
+        camera.apply(Pathfinder.this);
         drawCrossingLine(lastPoint, mouse);
         lastPoint.display(Pathfinder.this);
+        popMatrix();
       }
       
       showInstructions();
@@ -227,6 +274,11 @@ public class Pathfinder extends PApplet {
       text("click and drag: move endpoint",     5, y += tSize);
       text("w: Add random wall.",               5, y += tSize);
       
+      y += tSize;
+      text("mouse wheel: zoom",                 5, y += tSize);
+      text("middle-drag: move view",            5, y += tSize);
+      text("h: reset view",                     5, y += tSize);
+      
       y += tSize;
       text("ctrl-z: " + wsCurr.undoPeek(), 5, y += tSize);
       text("shift-ctrl-z: " + wsCurr.redoPeek(), 5, y += tSize);
@@ -270,8 +322,9 @@ public class Pathfinder extends PApplet {
       }
       // normal controls when not in mid-save
       else {
-        if (key == 'w') wsCurr.add(new Wall(Pathfinder.this));
+        if (key == 'w') wsCurr.add(new Wall(randomPoint(), randomPoint()));
         if (key == 'r') wsCurr.revert();
+        if (key == 'h') camera.reset();
         if ('0' <= key && key <= '9') loadWalls(key - '0');
         if (key == 's') {
           // begin typing name to save to, if none exists
@@ -304,7 +357,7 @@ public class Pathfinder extends PApplet {
           
           wsCurr = new WallSet(); // brand new WallSet at end of list
           wsIndex = wsList.size();
-          wsList.add(wsCurr);
+          wsList.add(new WallSetHandle(wsCurr));
         }
       }
     }
@@ -335,10 +388,24 @@ public class Pathfinder extends PApplet {
         System.err.println("Only " + wsList.size() + " wall sets.");
       }
       else {
+        WallSetHandle handle = wsList.get(index);
+        if (!handle.isLoaded()) System.out.println("Waiting for wall set #" + index + "...");
+        
+        // only now wait for it, if it's still being read
+        WallSet ws = handle.get();
+        if (ws == null) {
+          System.err.println("Wall set #" + index + " couldn't be loaded; removing it.");
+          wsList.remove(index);
+          if (wsIndex > index) wsIndex--;
+          prefetchAround(wsIndex);
+          return;
+        }
+        
         lastPoint = null;  // deselect points when loading
         
         wsIndex = index;
-        wsCurr = wsList.get(index);
+        wsCurr = ws;
+        prefetchAround(index);
       }
     }
     
@@ -347,11 +414,11 @@ public class Pathfinder extends PApplet {
     }
     
     public void mousePressed() {
-      Point clicked = findPoint(mouseX, mouseY);
+      Point clicked = findPoint(mouse.x, mouse.y);
       if (mouseButton == LEFT) {
         // create new Point if one was not already there
         if (clicked == null) {
-          clicked = new Point(mouseX, mouseY);
+          clicked = new Point(mouse.x, mouse.y);
           
           // create new wall if there was another point before
           if (lastPoint != null) {
@@ -393,8 +460,9 @@ public class Pathfinder extends PApplet {
     public void mouseDragged() {
       // drag point if one is selected
       if (lastPoint != null) {
-        lastPoint.x = mouseX;
-        lastPoint.y = mouseY;
+        lastPoint.x = mouse.x;
+        lastPoint.y = mouse.y;
+        wsCurr.pointMoved(lastPoint);
       }
     }
     
@@ -411,18 +479,21 @@ public class Pathfinder extends PApplet {
       }
     }
     
-    // finds Point with 5 px of a given point
+    // random Point somewhere on screen, wherever the view is
+    Point randomPoint() {
+      return new Point(camera.worldX(random(width)), camera.worldY(random(height)));
+    }
+
+    // finds Point with 5 px (on screen) of a given point
     Point findPoint(float x, float y) {
+      float radius = 5 / camera.zoom;
       if (lastPoint != null &&
-          dist(lastPoint.x, lastPoint.y, x, y) <= 5) {
+          dist(lastPoint.x, lastPoint.y, x, y) <= radius) {
         return lastPoint;
       }
       
-      for (Point p : wsCurr.points) {
-        if (dist(p.x, p.y, x, y) <= 5) return p;
-      }
-      
-      return null;
+      // only looks near (x, y), through the WallSet's grid
+      return wsCurr.pointNear(x, y, radius);
     }
   }
   
@@ -432,30 +503,35 @@ public class Pathfinder extends PApplet {
   class PlayMode implements Mode {
     boolean playPaused = false;
     
-    Player player;
-    Mover[] ghosts;
+    // the game being played; this mode just ticks and draws it
+    Simulation sim;
     
     int start;
-    int started = 0;
+    
+    // how many swarm ghosts each +/- press adds/removes
+    final int SWARM_STEP = 1000;
     
     // TODO: graph settings?
     boolean DISPLAY_POSSIBLE_PATHS = false; // displays all connections between possible movement points (movers, players, walls)
     boolean DISPLAY_MOVEMENTS = false; // displays the paths that ghosts will be taking to get to the player
     
+    // counter totals as of the previous frame, so the overlay can show
+    //   how much work each frame did
+    long lastTests, lastExpansions;
+    
     // controls display and movement of game
     public void draw() {
       // TODO: update movement graph based on Mover positions
       
       background(0, 0, 100);  // white
    
-      if (!playPaused) {
-    	  player.move();
-    	  if(frameCount % 5 == 0 || started == 0) {
-        	  updateWallConnections();
-        	  updateGhostConnections();
-        	  started = 1;
-    	  }
-      }
+      if (!playPaused) sim.tick();
+      Player player = sim.player;
+      long displayStart = sim.metrics.start();
+      
+      // movers are drawn in the world; walls (below) do their own view
+      pushMatrix();
+      camera.apply(Pathfinder.this);
       
       // half the time display player first; half the time last
       if (frameCount % 2 != 0) player.display(Pathfinder.this);
@@ -465,8 +541,7 @@ public class Pathfinder extends PApplet {
       // displayGhostDirections(); // shows paths yaknow
       
    // handle all ghosts
-      for (Mover m : ghosts) {
-        if (!playPaused) m.move();
+      for (Mover m : sim.ghosts) {
         m.display(Pathfinder.this);
         
         // TODO: display movement paths?
@@ -477,11 +552,16 @@ public class Pathfinder extends PApplet {
         }
       }
       
+      sim.swarm.display(Pathfinder.this);
+      
       // half the time display player last; half the time first
       if (frameCount % 2 == 0) player.display(Pathfinder.this);
+      popMatrix();
       
-      wsCurr.display(Pathfinder.this);
+      wallLayer.display(Pathfinder.this, wsCurr, camera);
+      sim.metrics.end(Metrics.DISPLAY, displayStart);
       
+      if (Metrics.enabled) showMetrics();
       
       if (elapsed < 10000) {
         // in 1st 10 seconds of play mode, display instructions
@@ -504,54 +584,71 @@ public class Pathfinder extends PApplet {
       text("space: switch mode", 5, y += tSize);
       text("p: pause/unpause",   5, y += tSize);
       text("r: reset game",      5, y += tSize);
+      text("g: reduced graph " + (wsCurr.graph.reduced ? "off" : "on"), 5, y += tSize);
+      text("m: metrics " + (Metrics.enabled ? "off" : "on"), 5, y += tSize);
+      text("x: export metrics",  5, y += tSize);
+      text("h: reset view",      5, y += tSize);
+      text("+/-: " + SWARM_STEP + " more/fewer swarm ghosts (" + sim.swarm.count + ")", 5, y += tSize);
+    }
+    
+    // overlay with how long each phase of a frame takes (p50/p99 over
+    //   everything since metrics were turned on) and this frame's work
+    void showMetrics() {
+      fill(0, 70);  // black, 70% opacity
+      textAlign(RIGHT, BOTTOM);
+      textSize(12);
+      float tSize = textAscent() + textDescent();
+      float y = 0;
+      
+      text("phase: p50 / p99 (\u00b5s)", width - 5, y += tSize);
+      for (int i = 0; i < Metrics.PHASES.length; i++) {
+        Metrics.Histogram h = sim.metrics.phases[i];
+        text(Metrics.PHASES[i] + ": " + nf(h.percentile(0.5) / 1000f, 0, 1) +
+             " / " + nf(h.percentile(0.99) / 1000f, 0, 1), width - 5, y += tSize);
+      }
+      
+      long tests = Metrics.intersectionTests.sum();
+      long expansions = Metrics.nodeExpansions.sum();
+      text("wall tests this frame: " + (tests - lastTests), width - 5, y += tSize);
+      text("node expansions this frame: " + (expansions - lastExpansions), width - 5, y += tSize);
+      lastTests = tests;
+      lastExpansions = expansions;
     }
     
     public void keyPressed() {
       if (key == 'p') playPaused = !playPaused;
       if (key == 'r') resetPlayers();
       
-      // TODO: control graph settings?
+      // graph settings
+      if (key == 'g') {
+        wsCurr.graph.setReduced(!wsCurr.graph.reduced);
+        wsCurr.graph.sync();
+      }
       
+      // metrics start from scratch each time they're turned on
+      if (key == 'm') {
+        Metrics.enabled = !Metrics.enabled;
+        if (Metrics.enabled) sim.metrics.reset();
+        lastTests = lastExpansions = 0;
+      }
+      if (key == 'x') sim.metrics.export(new File("metrics.csv"));
+      if (key == 'h') camera.reset();
+      
+      // stress testing
+      if (key == '+' || key == '=') sim.swarm.spawn(SWARM_STEP);
+      if (key == '-') sim.swarm.remove(SWARM_STEP);
     }
     
     // entering and exiting play mode
     public void init() {
+      sim = new Simulation(wsCurr, width, height, mouse, System.nanoTime());
       resetPlayers();
-      
-      // TODO: create graph among Points
-    	for(Point compareToPoint: wsCurr.points) {
-    		compareToPoint.connections = new HashSet<>();
-    		for(Point curPoint: wsCurr.points) {
-	    		if(wsCurr.isClearPath(curPoint, compareToPoint) && compareToPoint != curPoint) {
-	    			 compareToPoint.connections.add(curPoint);
-	    	    }
-    		}
-    	}
     }
     
-    
-    void updateGhostConnections() {
-    	for(Mover m: ghosts) {
-    		m.connections = new HashSet<>();
-    	}
-    	
-    	for(Point compareToPoint: wsCurr.points) {
-			for(Mover m: ghosts) {
-				if(wsCurr.isClearPath(m, compareToPoint)) m.connections.add(compareToPoint);
-				if(wsCurr.isClearPath(m, player)) m.connections.add(player);
-			}
-    	}
+    public void cleanup() {
+      if (sim != null) sim.detach();
     }
     
-    void updateWallConnections() {
-    	for(Point compareToPoint: wsCurr.points) {
-			if(wsCurr.isClearPath(player, compareToPoint) && !compareToPoint.connections.contains(player)) {
-				compareToPoint.connections.add(player);
-			} else if(compareToPoint.connections.contains(player) && !wsCurr.isClearPath(player, compareToPoint)) {
-				compareToPoint.connections.remove(player);
-			}
-    	}
-    }
     
     void displayConnections() {
     	for(Point point: wsCurr.points) {
@@ -565,7 +662,8 @@ public class Pathfinder extends PApplet {
     
     void ghostConnections() {
     	// purely for me
-    	for(Mover m: ghosts) {
+    	for(Mover m: sim.ghosts) {
+    		m.updateConnections();
     		for(Point connec: m.connections) {
     			strokeWeight(2);
     			stroke(255,255,150);
@@ -575,7 +673,7 @@ public class Pathfinder extends PApplet {
     }
     
     void displayGhostDirections() {
-    	for(Mover m: ghosts) {
+    	for(Mover m: sim.ghosts) {
     		Point prevPoint = m;
     		for(int p = m.index; p < m.directions.size(); p++) { // interfaces are quite annoying
     			strokeWeight(2);								 // ^ i dont remember why i said this.
@@ -589,18 +687,8 @@ public class Pathfinder extends PApplet {
   
     // reset player/enemy positions
     void resetPlayers() {
-      player = new Player(Pathfinder.this);
-      ghosts = new Mover[]{
-        // new Mover(Pathfinder.this, new MoveTo(player)),
-        // new Mover(Pathfinder.this, new MoveTo(mouse)),
-        // new Mover(Pathfinder.this, new RandomMovement()),
-        new Mover(Pathfinder.this, new breadthFirstSearch(player)),
-        new Mover(Pathfinder.this, new depthFirstSearch(player)),
-    	new Mover(Pathfinder.this, new Dijkstra(player)),
-    	new Mover(Pathfinder.this, new RandomizedMovement(player))
-      };
+      sim.reset();
       start = millis();
     }
   }
 }
- 
@@ -8,12 +8,11 @@ class Point {
   float x, y;
   Wall wall;
   Set<Point> connections = new HashSet<>(); // sets :)
-  
-  // random point
-  Point(PApplet pa) {
-    x = pa.random(0, pa.width);
-    y = pa.random(0, pa.height);
-  }
+  // goes up whenever the set of points that can see this one changes
+  //   (only kept up for moving targets, eg the player)
+  int connectionsVersion = 0;
+  // dense id in the compact form of the graph (see CompactGraph)
+  int id = -1;
   
   // specific point
   Point(float x, float y) {
@@ -66,8 +65,8 @@ class Point {
       if (b1.x == b2.x) return null;
       
       // line b is left or right of line a
-      if (Math.min(b1.x, b2.x) < a1.x ||
-          Math.max(b1.x, b2.x) > a1.x) return null;
+      if (Math.max(b1.x, b2.x) < a1.x ||
+          Math.min(b1.x, b2.x) > a1.x) return null;
       
       // calculate intercept
       float yIntercept = b1.y + (b1.y-b2.y)/(b1.x-b2.x)*(a1.x - b1.x);
@@ -116,6 +115,10 @@ class Point {
   }
   
   // equal if two Points have same coordinates
+  // NOTE: hashCode() is deliberately NOT overridden to match: Points
+  //   move (dragging, Movers) while sitting in HashSets, so hashing by
+  //   coordinates would lose them; sets of Points behave by identity,
+  //   and searches use int ids (CompactGraph) instead of hashing at all
   public boolean equals(Object other) {
     if (!(other instanceof Point)) return false;
     
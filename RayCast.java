@@ -0,0 +1,98 @@
+// finds where the nearest wall crosses a segment, as a fraction t of the
+//   way along it, walking the grid cells the segment crosses in order
+//   and stopping as soon as no cell further on could hold anything
+//   nearer
+// NOTE: holds the state of one cast in fields (rather than in a lambda
+//   and boxed results), so keeping one around per Mover (or per thread)
+//   makes casting (and checking for a clear path) allocate nothing at
+//   all; one of these must not be used by two threads at once
+class RayCast implements WallGrid.CellXYVisitor {
+  WallSet ws;
+  float ax, ay, bx, by;
+  int skipA, skipB;
+  double nearest;  // t of the nearest hit so far, or NaN
+  // only whether anything is in the way matters, not what's nearest
+  boolean anyHit;
+  boolean blocked;
+
+  // where along a->b (0 = a, 1 = b) the nearest wall crosses it, or NaN
+  //   if none do, ignoring the walls in slots skipA and skipB (or -1)
+  double cast(WallSet ws, float ax, float ay, float bx, float by, int skipA, int skipB) {
+    start(ws, ax, ay, bx, by, skipA, skipB, false);
+    WallBuffer buf = ws.buffer;
+    if (buf.count < WallSet.DIRECT_SCAN) {
+      Metrics.countTests(buf.size);
+      for (int i = 0; i < buf.size; i++) hit(i);
+    }
+    else ws.grid.walkXY(ax, ay, bx, by, this);
+
+    this.ws = null;  // don't hold on to the walls
+    return nearest;
+  }
+
+  // whether any wall (but the ones in slots skipA and skipB) blocks
+  //   a->b, stopping at the first one found
+  boolean blocks(WallSet ws, float ax, float ay, float bx, float by, int skipA, int skipB) {
+    start(ws, ax, ay, bx, by, skipA, skipB, true);
+    WallBuffer buf = ws.buffer;
+    if (buf.count < WallSet.DIRECT_SCAN) {
+      Metrics.countTests(buf.size);
+      blocked = buf.anyBlocks(ax, ay, bx, by, skipA, skipB);
+    }
+    else ws.grid.walkXY(ax, ay, bx, by, this);
+
+    this.ws = null;
+    return blocked;
+  }
+
+  void start(WallSet ws, float ax, float ay, float bx, float by, int skipA, int skipB,
+             boolean anyHit) {
+    this.ws = ws;
+    this.ax = ax;
+    this.ay = ay;
+    this.bx = bx;
+    this.by = by;
+    this.skipA = skipA;
+    this.skipB = skipB;
+    this.anyHit = anyHit;
+    nearest = Double.NaN;
+    blocked = false;
+  }
+
+  public boolean visit(int cx, int cy) {
+    WallGrid grid = ws.grid;
+    int index = grid.indexOf(cx, cy);
+    if (index >= 0) {
+      int[] ids = grid.cells[index];
+      int n = grid.counts[index];
+      Metrics.countTests(n);
+      if (anyHit) {
+        // any wall at all in the way is enough
+        blocked = ws.buffer.anyBlocks(ax, ay, bx, by, skipA, skipB, ids, n);
+        return !blocked;
+      }
+      for (int k = 0; k < n; k++) hit(ids[k]);
+    }
+    if (anyHit) return true;
+    // cells further on only start where this one ends, so a hit before
+    //   then can't be beaten (but an edge cell may stand for cells past
+    //   the edge too, so it can't say where it ends)
+    return Double.isNaN(nearest) || grid.onEdge(cx, cy) || nearest > exit(cx, cy);
+  }
+
+  void hit(int i) {
+    if (i == skipA || i == skipB) return;
+    double t = ws.buffer.hitAt(i, ax, ay, bx, by);
+    if (t < nearest || Double.isNaN(nearest)) nearest = t;
+  }
+
+  // t at which the segment leaves cell (cx, cy)
+  double exit(int cx, int cy) {
+    float dx = bx - ax, dy = by - ay;
+    double tx = dx == 0 ? Double.POSITIVE_INFINITY
+              : ((cx + (dx > 0 ? 1 : 0)) * WallGrid.CELL_SIZE - ax) / dx;
+    double ty = dy == 0 ? Double.POSITIVE_INFINITY
+              : ((cy + (dy > 0 ? 1 : 0)) * WallGrid.CELL_SIZE - ay) / dy;
+    return Math.min(tx, ty);
+  }
+}
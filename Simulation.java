@@ -0,0 +1,143 @@
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+// the game itself, without any drawing: a WallSet, the player, and the
+//   ghosts chasing it, advanced one fixed tick at a time
+// NOTE: nothing here needs a window (or Processing at all), so it can
+//   be run headless as fast as it will go, eg for batch runs; play
+//   mode just ticks one of these per frame and draws what's in it
+class Simulation {
+  // how close a ghost has to get to the player to catch it (radii of
+  //   the two as drawn)
+  static final float CATCH_RADIUS = 15;
+
+  WallSet ws;
+  float width, height;  // area movers start in
+  Random random;        // every random choice in the game comes from here
+
+  // point the player heads for (eg the mouse)
+  Point playerTarget;
+  Player player;
+  Mover[] ghosts = new Mover[0];
+  // lots more ghosts, for stress testing (none unless spawned)
+  Swarm swarm = new Swarm(this);
+
+  long ticks = 0;
+  // shared distances to each point some FlowField is chasing
+  Map<Point, DistanceField> fields = new IdentityHashMap<>();
+  // how long each part of a tick takes (when Metrics.enabled)
+  Metrics metrics = new Metrics();
+
+  Simulation(WallSet ws, float width, float height, Point playerTarget, long seed) {
+    this.ws = ws;
+    this.width = width;
+    this.height = height;
+    this.playerTarget = playerTarget;
+    random = new Random(seed);
+  }
+
+  // new player and the usual ghosts (one per search rule), in random
+  //   places
+  void reset() {
+    detach();
+    player = new Player(this, playerTarget);
+    ghosts = new Mover[]{
+      // new Mover(this, new MoveTo(player)),
+      // new Mover(this, new MoveTo(playerTarget)),
+      // new Mover(this, new RandomMovement()),
+      new Mover(this, new breadthFirstSearch(player)),
+      new Mover(this, new depthFirstSearch(player)),
+      new Mover(this, new Dijkstra(player)),
+      new Mover(this, new AStar(player)),
+      new Mover(this, new FlowField(player)),
+      new Mover(this, new RandomizedMovement(player))
+    };
+    started();
+  }
+
+  // new player, and n ghosts that all follow rules made by rule (from
+  //   the player), in random places
+  void reset(Function<Point, MoveRule> rule, int n) {
+    detach();
+    player = new Player(this, playerTarget);
+    ghosts = new Mover[n];
+    for (int i = 0; i < n; i++) ghosts[i] = new Mover(this, rule.apply(player));
+    started();
+  }
+
+  void started() {
+    ticks = 0;
+    fields.clear();
+    swarm.clear();
+
+    // graph among Points is kept by the WallSet itself, so this is
+    //   only expensive the first time (or after a revert)
+    ws.graph.sync();
+  }
+
+  // don't leave this game's player behind in the graph
+  void detach() {
+    if (player != null) ws.graph.detach(player);
+  }
+
+  // up to date DistanceField to target, shared by everything chasing it
+  DistanceField fieldTo(Point target) {
+    DistanceField field = fields.computeIfAbsent(target, DistanceField::new);
+    long start = metrics.start();
+    if (field.update(ws.graph)) metrics.end(Metrics.FIND_DIRECTIONS, start);
+    return field;
+  }
+
+  // whether ghost m is touching the player
+  boolean caught(Mover m) {
+    return m.distTo(player) < CATCH_RADIUS;
+  }
+
+  // one step of the game
+  void tick() {
+    long start = metrics.start(), t = start;
+    player.move();
+    t = metrics.end(Metrics.PLAYER_MOVE, t);
+    ws.graph.sync(); // picks up any wall edits
+    t = metrics.end(Metrics.GRAPH_SYNC, t);
+    if (ticks % 5 == 0) {
+      updateWallConnections();
+      t = metrics.end(Metrics.WALL_CONNECTIONS, t);
+      updateGhostConnections();
+      t = metrics.end(Metrics.GHOST_CONNECTIONS, t);
+    }
+
+    for (Mover m : ghosts) {
+      m.move();
+      t = metrics.end(Metrics.GHOST_MOVE, t);
+    }
+    swarm.tick();
+    metrics.end(Metrics.SWARM_MOVE, t);
+    metrics.end(Metrics.TICK, start);
+    ticks++;
+  }
+
+  // NOTE: only whether each ghost can see the player is worked out
+  //   here; its wall points are just marked due, and only worked out
+  //   once its rule is about to look (see Mover.updateConnections)
+  void updateGhostConnections() {
+    for (Mover m : ghosts) {
+      m.connectionsDue = true;
+      if (ws.isClearPath(m, player, m.ray)) m.connections.add(player);
+      else                                  m.connections.remove(player);
+    }
+  }
+
+  // NOTE: this only tests points the player may have changed its view
+  //   of since they were last tested (see MoverVisibility), so it costs
+  //   next to nothing while the player is out in the open
+  void updateWallConnections() {
+    player.visibility().update((p, visible) -> {
+      if (visible) p.connections.add(player);
+      else         p.connections.remove(player);
+      player.connectionsVersion++; // cached routes to player are out of date
+    });
+  }
+}
@@ -0,0 +1,208 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import processing.core.PApplet;
+
+// any number of plain ghosts chasing the player, kept as parallel
+//   arrays of positions, speeds and waypoints instead of Mover objects,
+//   so thousands of them can be stepped (across every core) and drawn
+//   each frame
+// NOTE: they follow the same DistanceField as FlowField ghosts, but
+//   can't each afford a full set of connections (MoverVisibility), so
+//   every so often each one looks for the best wall point among walls
+//   near it, then follows the field's next points from there
+class Swarm {
+  // waypoint for ghosts heading straight for the player
+  static final int PLAYER = DistanceField.TARGET;
+  // each ghost picks its waypoint again this often (not all on the same
+  //   tick), or straight away when the graph changes
+  static final int REPLAN = 10;
+  // ghosts per task when splitting a tick across cores
+  static final int CHUNK = 256;
+  // set false to step every ghost on the calling thread
+  static boolean PARALLEL = true;
+
+  Simulation sim;
+  float[] x = new float[0], y = new float[0];
+  float[] speed = new float[0];
+  int[] waypoint = new int[0];  // compact id of the point headed for, or PLAYER
+  int count = 0;
+  float hue = 270;  // all drawn the same (purple)
+
+  // graph the waypoints are ids in
+  CompactGraph graph;
+
+  Swarm(Simulation sim) {
+    this.sim = sim;
+  }
+
+  // adds n ghosts in random places
+  void spawn(int n) {
+    if (count + n > x.length) {
+      int cap = Math.max(count + n, x.length * 2);
+      x = Arrays.copyOf(x, cap);
+      y = Arrays.copyOf(y, cap);
+      speed = Arrays.copyOf(speed, cap);
+      waypoint = Arrays.copyOf(waypoint, cap);
+    }
+    for (int i = count; i < count + n; i++) {
+      x[i] = sim.random.nextFloat() * sim.width;
+      y[i] = sim.random.nextFloat() * sim.height;
+      speed[i] = 2.0f;  // same as a Mover
+      waypoint[i] = PLAYER;
+    }
+    count += n;
+    graph = null;  // new ones need a waypoint before moving
+  }
+
+  // drops the last n ghosts
+  void remove(int n) {
+    count = Math.max(0, count - n);
+  }
+
+  void clear() {
+    count = 0;
+  }
+
+  // moves every ghost one step toward the player
+  // NOTE: each ghost only reads the walls, the field and the player, and
+  //   only writes its own slots, so splitting them up between threads
+  //   gives the same result as doing them in order
+  void tick() {
+    if (count == 0) return;
+    Player player = sim.player;
+    DistanceField field = sim.fieldTo(player);
+    boolean replanAll = field.graph != graph;
+    graph = field.graph;
+    long tick = sim.ticks;
+
+    IntStream chunks = IntStream.range(0, (count + CHUNK - 1) / CHUNK);
+    if (PARALLEL) chunks = chunks.parallel();
+    chunks.forEach(c -> {
+      Task task = new Task();  // one per task; not thread safe
+      int to = Math.min(count, (c + 1) * CHUNK);
+      for (int i = c * CHUNK; i < to; i++) {
+        // old ids mean nothing in a new graph
+        if (replanAll) waypoint[i] = PLAYER;
+        if (replanAll || (tick + i) % REPLAN == 0) plan(i, field, player, task);
+        step(i, field, player, task.ray);
+      }
+    });
+  }
+
+  // what one task keeps from ghost to ghost (and the state of the plan
+  //   under way), so stepping a ghost allocates nothing
+  class Task implements WallGrid.IndexVisitor {
+    RayCast ray = new RayCast();
+    DistanceField field;
+    float px, py;
+    int best;
+    double bestDist;
+
+    // looks at both ends of every wall in one cell
+    public boolean visit(int index) {
+      WallGrid grid = sim.ws.grid;
+      int[] ids = grid.cells[index];
+      for (int k = grid.counts[index] - 1; k >= 0; k--) {
+        Wall w = sim.ws.buffer.walls[ids[k]];
+        consider(w.p1, ids[k], this);
+        consider(w.p2, ids[k], this);
+      }
+      return true;
+    }
+  }
+
+  // picks where ghost i should head: the player if it can see it,
+  //   else the wall point near it that it can see with the shortest
+  //   way on to the player
+  void plan(int i, DistanceField field, Player player, Task task) {
+    WallSet ws = sim.ws;
+    float px = x[i], py = y[i];
+    if (ws.isClearPath(px, py, player.x, player.y, -1, -1, task.ray)) {
+      waypoint[i] = PLAYER;
+      return;
+    }
+
+    task.field = field;
+    task.px = px;
+    task.py = py;
+    task.best = -1;
+    task.bestDist = Double.POSITIVE_INFINITY;
+    // the point it's already heading for may be further away than the
+    //   walls looked at, so it has to beat that too
+    if (waypoint[i] >= 0) {
+      Point q = graph.nodes[waypoint[i]];
+      consider(q, ws.buffer.slotOf(q.wall), task);
+    }
+    // the cell it's in and the ones around it (same as walkNear from
+    //   the point to itself, without the extra visitor that takes)
+    float r = WallGrid.CELL_SIZE;
+    ws.grid.walkBox(px - r, py - r, px + r, py + r, task);
+    // if it can't see any way on, it just heads for the player
+    waypoint[i] = task.best >= 0 ? task.best : PLAYER;
+  }
+
+  // keeps wall point q (on the wall in slot s) as task's best if it's
+  //   the best so far and can be seen from where the task's ghost is
+  void consider(Point q, int s, Task task) {
+    int id = graph.idOf(q);
+    if (id < 0) return;
+    float dx = q.x - task.px, dy = q.y - task.py;
+    double d = Math.sqrt(dx*dx + dy*dy) + task.field.dist[id];
+    // only test the path for points that would be better
+    if (d < task.bestDist && sim.ws.isClearPath(task.px, task.py, q.x, q.y, -1, s, task.ray)) {
+      task.best = id;
+      task.bestDist = d;
+    }
+  }
+
+  // moves ghost i toward its waypoint, moving on to the next one along
+  //   the field once it gets there
+  void step(int i, DistanceField field, Player player, RayCast ray) {
+    float px = x[i], py = y[i];
+    float tx = player.x, ty = player.y;
+    int w = waypoint[i];
+    while (w >= 0) {
+      Point q = graph.nodes[w];
+      float dx = q.x - px, dy = q.y - py;
+      if (dx*dx + dy*dy >= CachedRoute.REACHED * CachedRoute.REACHED) {
+        tx = q.x;
+        ty = q.y;
+        break;
+      }
+      w = field.toward[w];
+    }
+    waypoint[i] = w;
+
+    // same as Mover.moveTo
+    float dx = tx - px, dy = ty - py;
+    double d = Math.sqrt(dx*dx + dy*dy);
+    if (d == 0) return;
+    if (d > speed[i]) {
+      dx *= speed[i] / d;
+      dy *= speed[i] / d;
+    }
+
+    double t = sim.ws.rayCast(px, py, px + dx, py + dy, -1, -1, ray);
+    if (Double.isNaN(t)) {
+      x[i] = px + dx;
+      y[i] = py + dy;
+    }
+    // move halfway to blockage, unless within 0.5px already
+    else if (t * Math.sqrt(dx*dx + dy*dy) >= 0.5) {
+      x[i] = (float) (px + t*dx / 2);
+      y[i] = (float) (py + t*dy / 2);
+    }
+  }
+
+  // every ghost as one shape of round points, rather than an ellipse
+  //   call each
+  void display(PApplet pa) {
+    if (count == 0) return;
+    pa.stroke(hue, 100, 100);
+    pa.strokeWeight(10);
+    pa.beginShape(PApplet.POINTS);
+    for (int i = 0; i < count; i++) pa.vertex(x[i], y[i]);
+    pa.endShape();
+  }
+}
@@ -0,0 +1,278 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+// graph of which wall endpoints can see each other (stored in each
+//   Point's connections), owned by a WallSet and kept up to date as
+//   walls change, rather than rebuilt from scratch for every game
+class VisibilityGraph {
+  // build the full graph across all cores; set false to fall back to
+  //   testing pairs one at a time on the calling thread
+  static boolean PARALLEL_BUILD = true;
+  
+  WallSet ws;
+
+  // "reduced" graph: leave out edges that can never be needed for a
+  //   shortest path (see prune()), only worked out at build time
+  boolean reduced = false;
+
+  boolean built = false;
+  int version = 0;  // goes up every time the graph changes
+
+  // geometry (x1, y1, x2, y2) each wall had when the graph last
+  //   accounted for it, needed to know what a wall USED to block
+  Map<Wall, float[]> known = new IdentityHashMap<>();
+
+  // walls added/removed/moved since the graph was last brought up
+  //   to date
+  // NOTE: changes pile up here and are only applied in sync(), so
+  //   dragging a point around in build mode costs nothing
+  Set<Wall> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  // int-id snapshot of the graph for searching, rebuilt when stale
+  CompactGraph compact;
+
+  VisibilityGraph(WallSet ws) {
+    this.ws = ws;
+  }
+
+  // a wall was added, removed, or moved
+  void wallChanged(Wall w) {
+    if (built) dirty.add(w);
+  }
+
+  // everything changed; start over next time it is needed
+  void invalidate() {
+    built = false;
+    version++;
+    known.clear();
+    dirty.clear();
+  }
+
+  // brings the graph up to date with the walls
+  void sync() {
+    if (!built) {
+      build();
+      return;
+    }
+    if (dirty.isEmpty()) return;
+
+    // pruning depends on edges all over the graph, so a reduced
+    //   graph is simply built again
+    if (reduced) {
+      build();
+      return;
+    }
+
+    // cut every edge the walls in their new positions now block
+    for (Wall w : dirty) {
+      if (ws.walls.contains(w)) cutEdges(w);
+    }
+    // take away each wall as it was, restoring edges it blocked
+    for (Wall w : dirty) {
+      if (known.containsKey(w)) unlink(w);
+    }
+    // connect each wall (as it is now) back in
+    for (Wall w : dirty) {
+      if (ws.walls.contains(w)) link(w);
+    }
+
+    dirty.clear();
+    version++;
+  }
+
+  // full O(P^2) construction, testing each pair of points once
+  void build() {
+    Point[] pts = ws.points.toArray(new Point[0]);
+    for (Point p : pts) p.connections = new HashSet<>();
+
+    int[][] rows = visiblePairs(pts, PARALLEL_BUILD);
+    for (int i = 0; i < pts.length; i++) {
+      for (int j : rows[i]) connect(pts[i], pts[j]);
+    }
+    if (reduced) prune(pts);
+
+    known.clear();
+    for (Wall w : ws.walls) known.put(w, geometry(w));
+    dirty.clear();
+    built = true;
+    version++;
+  }
+
+  // for each point i, the (ascending) indices j > i of points it can
+  //   see, so every unordered pair is tested exactly once
+  // NOTE: each row is worked out by exactly one task and written to
+  //   its own slot, so the walls/grid are only ever read while the
+  //   pool is running, and no locking is needed; the Point connection
+  //   sets themselves are only touched afterwards, on this thread
+  int[][] visiblePairs(Point[] pts, boolean parallel) {
+    int[][] rows = new int[pts.length][];
+
+    IntStream indices = IntStream.range(0, pts.length);
+    // parallel streams run on the common ForkJoinPool; rows get
+    //   shorter as i grows, which work stealing evens out
+    if (parallel) indices = indices.parallel();
+
+    indices.forEach(i -> {
+      int[] row = new int[pts.length - i - 1];
+      int n = 0;
+      RayCast ray = new RayCast();  // one per row; not thread safe
+      for (int j = i + 1; j < pts.length; j++) {
+        if (ws.isClearPath(pts[i], pts[j], ray)) row[n++] = j;
+      }
+      rows[i] = Arrays.copyOf(row, n);
+    });
+
+    return rows;
+  }
+
+  // compact (CSR) form of the graph as it is now
+  CompactGraph compact() {
+    if (compact == null || compact.version != version) {
+      compact = CompactGraph.of(this);
+    }
+    return compact;
+  }
+
+  // turns the reduced graph on or off (rebuilding it next sync)
+  void setReduced(boolean r) {
+    if (r == reduced) return;
+    reduced = r;
+    invalidate();
+  }
+
+  // removes every edge u-v that passes straight through another point
+  //   x (nearer to u than v is) where u-x and x-v are both edges too:
+  //   going u-x-v is as short (to within rounding, since "straight" is
+  //   allowed a tiny angle), so no shortest path needs u-v
+  // NOTE: the textbook reduced visibility graph (only "bitangent"
+  //   edges that graze a corner on one side) does NOT keep shortest
+  //   paths the same here, since walls meeting at a shared end leave a
+  //   passable point there (the BUFFER zone), so corners aren't solid
+  //   the edges dropped here are all redundant whatever the walls do;
+  //   they are plentiful on maze-like maps, where lots of wall ends
+  //   line up
+  void prune(Point[] pts) {
+    List<Point[]> drop = new ArrayList<>();
+
+    for (Point u : pts) {
+      // neighbours around u by angle, nearest first for same angle
+      List<Point> around = new ArrayList<>();
+      for (Point v : u.connections) {
+        if (v.wall != null) around.add(v);
+      }
+      around.sort((a, b) -> {
+        int byAngle = Double.compare(Math.atan2(a.y - u.y, a.x - u.x),
+                                     Math.atan2(b.y - u.y, b.x - u.x));
+        return byAngle != 0 ? byAngle : Double.compare(u.distTo(a), u.distTo(b));
+      });
+
+      // x then v in the same direction from u, x nearer: u-x-v is
+      //   as short as u-v if x can see v
+      for (int k = 1; k < around.size(); k++) {
+        Point x = around.get(k - 1), v = around.get(k);
+        if (sameDirection(u, x, v) && x.connections.contains(v)) {
+          drop.add(new Point[]{u, v});
+        }
+      }
+    }
+
+    // only drop once everything has been checked against the full graph
+    for (Point[] e : drop) {
+      e[0].connections.remove(e[1]);
+      e[1].connections.remove(e[0]);
+    }
+  }
+
+  // whether x and v lie in the same direction from u, with x nearer
+  //   (or right on top of v, eg the shared end of two walls, which
+  //   makes going via x no longer at all)
+  // NOTE: the sort by angle can put a nearly-in-line x after v, so
+  //   "nearer" has to be checked here too, or the short edge u-v could
+  //   be dropped in favour of a detour via the further point
+  static boolean sameDirection(Point u, Point x, Point v) {
+    double ax = x.x - u.x, ay = x.y - u.y;
+    double bx = v.x - u.x, by = v.y - u.y;
+    double cross = ax*by - ay*bx, dot = ax*bx + ay*by;
+    double scale = Math.sqrt((ax*ax + ay*ay) * (bx*bx + by*by));
+    boolean nearer = ax*ax + ay*ay < bx*bx + by*by || (x.x == v.x && x.y == v.y);
+    return dot > 0 && Math.abs(cross) <= 1e-6 * scale && nearer;
+  }
+
+  // removes a moving Point (eg player) from the graph
+  void detach(Point p) {
+    for (Point q : ws.points) q.connections.remove(p);
+  }
+
+  // ==== incremental pieces ==== //
+
+  // removes edges between wall points that w crosses
+  void cutEdges(Wall w) {
+    for (Point u : ws.points) {
+      // endpoints of w are relinked from scratch anyway
+      if (u.wall == w) continue;
+
+      u.connections.removeIf(v -> v.wall != null && v.wall != w &&
+                                  w.blocks(u, v));
+    }
+  }
+
+  // removes wall w, as it was last accounted for, from the graph
+  void unlink(Wall w) {
+    float[] g = known.remove(w);
+
+    // endpoints lose all their edges to other wall points
+    for (Point p : new Point[]{w.p1, w.p2}) {
+      for (Point q : p.connections) {
+        if (q.wall != null) q.connections.remove(p);
+      }
+      p.connections.removeIf(q -> q.wall != null);
+    }
+
+    // only pairs on strictly opposite sides of the old wall's line
+    //   could have been blocked by it; re-test the ones that cross it
+    List<Point> left = new ArrayList<>();
+    List<Point> right = new ArrayList<>();
+    for (Point u : ws.points) {
+      if (u.wall == w) continue;
+
+      float side = (g[2] - g[0]) * (u.y - g[1]) - (g[3] - g[1]) * (u.x - g[0]);
+      if (side < 0) left.add(u);
+      if (side > 0) right.add(u);
+    }
+
+    for (Point u : left) {
+      for (Point v : right) {
+        if (u.connections.contains(v)) continue;
+        if (!Wall.blocks(g[0], g[1], g[2], g[3], u.x, u.y, v.x, v.y)) continue;
+
+        if (ws.isClearPath(u, v)) connect(u, v);
+      }
+    }
+  }
+
+  // adds wall w, as it is now, to the graph by connecting its ends
+  void link(Wall w) {
+    for (Point p : new Point[]{w.p1, w.p2}) {
+      for (Point q : ws.points) {
+        if (q != p && ws.isClearPath(p, q)) connect(p, q);
+      }
+    }
+    known.put(w, geometry(w));
+  }
+
+  static void connect(Point a, Point b) {
+    a.connections.add(b);
+    b.connections.add(a);
+  }
+
+  static float[] geometry(Wall w) {
+    return new float[]{w.p1.x, w.p1.y, w.p2.x, w.p2.y};
+  }
+}
@@ -1,23 +1,19 @@
 import java.util.Set;
 
 import processing.core.PApplet;
+import processing.core.PGraphics;
 
 // represents a wall in a 2d space
 class Wall {
   // endpoints
   Point p1, p2;
+  // position in the packed coordinates (WallBuffer) of the set this
+  //   wall is in, or -1
+  int slot = -1;
   // how big is "buffer zone" around ends of wall where it will not
   //   actually block any movement/paths
   static final float BUFFER = 0.1f;
   
-  // constructor: random wall within a PApplet
-  Wall(PApplet pa) {
-    p1 = new Point(pa);
-    p2 = new Point(pa);
-    p1.wall = this;
-    p2.wall = this;
-  }
-  
   // constructor: wall from 2 Points
   Wall(Point a, Point b) {
     p1 = a;
@@ -32,9 +28,14 @@ class Wall {
   }
   
   void display(PApplet pa) {
-    pa.stroke(0); // black
-    pa.strokeWeight(5);
-    pa.line(p1.x, p1.y, p2.x, p2.y);
+    display(pa.g);
+  }
+  
+  // draw onto any image (eg an offscreen WallLayer)
+  void display(PGraphics g) {
+    g.stroke(0); // black
+    g.strokeWeight(5);
+    g.line(p1.x, p1.y, p2.x, p2.y);
   }
   
   // returns intersection of path from a to b with this wall, or null
@@ -68,6 +69,39 @@ class Wall {
     return crash;
   }
  
+  // same answer as intersection(a, b) != null, but without creating
+  //   any Points along the way
+  boolean blocks(Point a, Point b) {
+    // same rules as intersection() for paths starting/ending on this wall
+    if (a.wall == this || b.wall == this) return a.wall == b.wall;
+    
+    return blocks(p1.x, p1.y, p2.x, p2.y, a.x, a.y, b.x, b.y);
+  }
+  
+  // whether wall (x1,y1)-(x2,y2) blocks path (ax,ay)-(bx,by), ignoring
+  //   crossings within BUFFER of either end of the wall
+  // NOTE: uses cross products ("orientation") rather than slopes, so
+  //   vertical lines need no special case:
+  //     a + t*(b-a) = p1 + u*(p2-p1)   solved for t (path), u (wall)
+  static boolean blocks(float x1, float y1, float x2, float y2,
+                        float ax, float ay, float bx, float by) {
+    double rx = bx - ax, ry = by - ay;  // path direction
+    double sx = x2 - x1, sy = y2 - y1;  // wall direction
+    
+    double denom = rx*sy - ry*sx;
+    // parallel lines don't intersect
+    if (denom == 0) return false;
+    
+    double qx = x1 - ax, qy = y1 - ay;
+    double t = (qx*sy - qy*sx) / denom;
+    double u = (qx*ry - qy*rx) / denom;
+    if (t < 0 || t > 1 || u < 0 || u > 1) return false;
+    
+    // distance of crossing from each end is u or 1-u of wall length
+    double len = Math.sqrt(sx*sx + sy*sy);
+    return u*len >= BUFFER && (1 - u)*len >= BUFFER;
+  }
+ 
   // generates array code for this wall (x1, y1, x2, y2)
   // NOTE: old version of this project had giant arrays of coordinates
   //   inside the code!
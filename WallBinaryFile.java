@@ -0,0 +1,98 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// compact binary wall files (".wallsb"), laid out as (all little-endian):
+//   magic    4 bytes  'W' 'L' 'S' 'B'
+//   version  int32    VERSION
+//   flags    int32    FLAG_CRC if a checksum follows the walls
+//   count    int32    number of walls
+//   walls    count * 4 float32s: x1, y1, x2, y2 of each wall in turn
+//   crc      int32    CRC32 of the wall bytes (only if FLAG_CRC)
+// NOTE: the walls are one flat run of floats, so loading is a single
+//   bulk copy out of a memory-mapped file instead of text parsing
+class WallBinaryFile {
+  static final String EXTENSION = ".wallsb";
+  static final int MAGIC = 'W' | 'L' << 8 | 'S' << 16 | 'B' << 24;
+  static final int VERSION = 1;
+  static final int FLAG_CRC = 1;
+  static final int HEADER_SIZE = 16;
+
+  // whether a file should be read/written in this format (by name)
+  static boolean isBinary(String name) {
+    return name != null && name.endsWith(EXTENSION);
+  }
+
+  // problem with the contents of a file
+  static class FormatException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    FormatException(String message) {
+      super(message);
+    }
+  }
+
+  // writes walls to f, with a checksum, given the coordinates of each
+  //   wall in turn (x1, y1, x2, y2, like read() returns)
+  static void write(File f, float[] coords) throws IOException {
+    int count = coords.length / 4;
+    ByteBuffer bytes = ByteBuffer.allocateDirect(HEADER_SIZE + count * 16 + 4)
+                                 .order(ByteOrder.LITTLE_ENDIAN);
+    bytes.putInt(MAGIC).putInt(VERSION).putInt(FLAG_CRC).putInt(count);
+    bytes.asFloatBuffer().put(coords, 0, count * 4);
+    bytes.position(HEADER_SIZE + count * 16);
+
+    CRC32 crc = new CRC32();
+    bytes.flip().position(HEADER_SIZE);
+    crc.update(bytes);
+    bytes.limit(bytes.capacity()).putInt((int) crc.getValue());
+    bytes.flip();
+
+    try ( FileChannel out = FileChannel.open(f.toPath(), StandardOpenOption.WRITE,
+                                             StandardOpenOption.CREATE,
+                                             StandardOpenOption.TRUNCATE_EXISTING) ) {
+      while (bytes.hasRemaining()) out.write(bytes);
+    }
+  }
+
+  // reads the coordinates of every wall in f: x1, y1, x2, y2 of each
+  //   wall in turn (so 4 * number of walls floats)
+  static float[] read(File f) throws IOException, FormatException {
+    try ( FileChannel in = FileChannel.open(f.toPath(), StandardOpenOption.READ) ) {
+      long size = in.size();
+      if (size < HEADER_SIZE) throw new FormatException("file too short for header");
+
+      MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      map.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (map.getInt() != MAGIC) throw new FormatException("not a binary wall file");
+      int version = map.getInt();
+      if (version != VERSION) throw new FormatException("unsupported version " + version);
+      int flags = map.getInt();
+      int count = map.getInt();
+
+      long wallBytes = count * 16L;
+      long expected = HEADER_SIZE + wallBytes + ((flags & FLAG_CRC) != 0 ? 4 : 0);
+      if (count < 0 || size != expected) {
+        throw new FormatException("size " + size + " doesn't match " + count + " walls");
+      }
+
+      if ((flags & FLAG_CRC) != 0) {
+        CRC32 crc = new CRC32();
+        crc.update(map.duplicate().position(HEADER_SIZE).limit((int) (HEADER_SIZE + wallBytes)));
+        int stored = map.getInt((int) (HEADER_SIZE + wallBytes));
+        if (stored != (int) crc.getValue()) throw new FormatException("checksum mismatch");
+      }
+
+      float[] coords = new float[count * 4];
+      map.position(HEADER_SIZE);
+      map.asFloatBuffer().get(coords);
+      return coords;
+    }
+  }
+}
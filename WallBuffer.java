@@ -0,0 +1,143 @@
+import java.util.Arrays;
+
+// packed copy of wall coordinates, as parallel arrays ("struct of
+//   arrays") instead of Wall -> Point -> float, so testing a segment
+//   against many walls runs over plain contiguous floats
+// NOTE: each wall in the buffer gets a slot (stored in Wall.slot) that
+//   doesn't change while it stays; free slots are filled with NaN,
+//   which fails every comparison, so loops never need to skip them
+class WallBuffer {
+  float[] x1 = new float[0], y1 = new float[0];
+  float[] x2 = new float[0], y2 = new float[0];
+  float[] len = new float[0];  // wall length (for buffer zone checks)
+  Wall[] walls = new Wall[0];
+
+  int size = 0;   // slots in use or freed so far (loops go up to here)
+  int count = 0;  // walls actually in the buffer
+
+  int[] free = new int[0];  // stack of freed slots to reuse
+  int freeCount = 0;
+
+  // slot of a wall in this buffer, or -1 if it isn't in it
+  int slotOf(Wall w) {
+    if (w == null) return -1;
+    int s = w.slot;
+    return (s >= 0 && s < size && walls[s] == w) ? s : -1;
+  }
+
+  // adds a wall, or copies its current coordinates if already present
+  int put(Wall w) {
+    int s = slotOf(w);
+    if (s < 0) {
+      if (freeCount > 0) s = free[--freeCount];
+      else {
+        if (size == walls.length) grow();
+        s = size++;
+      }
+      walls[s] = w;
+      w.slot = s;
+      count++;
+    }
+
+    x1[s] = w.p1.x;
+    y1[s] = w.p1.y;
+    x2[s] = w.p2.x;
+    y2[s] = w.p2.y;
+    float dx = x2[s] - x1[s], dy = y2[s] - y1[s];
+    len[s] = (float) Math.sqrt(dx*dx + dy*dy);
+    return s;
+  }
+
+  // removes a wall, returning the slot it had (or -1)
+  int remove(Wall w) {
+    int s = slotOf(w);
+    if (s < 0) return -1;
+
+    walls[s] = null;
+    x1[s] = y1[s] = x2[s] = y2[s] = len[s] = Float.NaN;
+    if (freeCount == free.length) free = Arrays.copyOf(free, Math.max(16, free.length * 2));
+    free[freeCount++] = s;
+    count--;
+    return s;
+  }
+
+  void clear() {
+    for (int s = 0; s < size; s++) {
+      if (walls[s] != null && walls[s].slot == s) walls[s].slot = -1;
+    }
+    Arrays.fill(walls, null);
+    size = count = freeCount = 0;
+  }
+
+  void grow() {
+    int cap = Math.max(64, walls.length * 2);
+    x1 = Arrays.copyOf(x1, cap);
+    y1 = Arrays.copyOf(y1, cap);
+    x2 = Arrays.copyOf(x2, cap);
+    y2 = Arrays.copyOf(y2, cap);
+    len = Arrays.copyOf(len, cap);
+    walls = Arrays.copyOf(walls, cap);
+  }
+
+  // ==== batch kernels ==== //
+  // NOTE: same math as Wall.blocks, but with the divisions multiplied
+  //   out (t = tn/d, u = un/d, flipped so d > 0) and no branches in the
+  //   per-wall test, so the JIT is free to auto-vectorize the loops
+
+  // how many walls the full scan tests between checks for an early exit
+  static final int CHUNK = 64;
+
+  // whether any wall blocks path (ax,ay)-(bx,by), testing every wall
+  //   except the ones in slots skipA and skipB (walls the path starts
+  //   or ends on, which never block it)
+  boolean anyBlocks(float ax, float ay, float bx, float by, int skipA, int skipB) {
+    for (int from = 0; from < size; from += CHUNK) {
+      int to = Math.min(size, from + CHUNK);
+      boolean hit = false;
+      for (int i = from; i < to; i++) {
+        hit |= blocks(i, ax, ay, bx, by) & i != skipA & i != skipB;
+      }
+      if (hit) return true;
+    }
+    return false;
+  }
+
+  // same as above, but only for the walls in slots ids[0..n-1]
+  //   (eg one grid cell)
+  boolean anyBlocks(float ax, float ay, float bx, float by, int skipA, int skipB,
+                    int[] ids, int n) {
+    for (int k = 0; k < n; k++) {
+      int i = ids[k];
+      if (i != skipA && i != skipB && blocks(i, ax, ay, bx, by)) return true;
+    }
+    return false;
+  }
+
+  // whether wall in slot i blocks path (ax,ay)-(bx,by)
+  boolean blocks(int i, float ax, float ay, float bx, float by) {
+    double rx = bx - ax, ry = by - ay;
+    double sx = x2[i] - x1[i], sy = y2[i] - y1[i];
+    double qx = x1[i] - ax, qy = y1[i] - ay;
+
+    double denom = rx*sy - ry*sx;
+    double sign = denom < 0 ? -1 : 1;
+    double d = denom * sign;
+    double tn = (qx*sy - qy*sx) * sign;
+    double un = (qx*ry - qy*rx) * sign;
+
+    double buf = Wall.BUFFER * d;
+    return d > 0 & tn >= 0 & tn <= d &
+           un * len[i] >= buf & (d - un) * len[i] >= buf;
+  }
+
+  // where along the path (0 = a, 1 = b) wall in slot i crosses it,
+  //   or NaN if it doesn't block it
+  double hitAt(int i, float ax, float ay, float bx, float by) {
+    if (!blocks(i, ax, ay, bx, by)) return Double.NaN;
+
+    double rx = bx - ax, ry = by - ay;
+    double sx = x2[i] - x1[i], sy = y2[i] - y1[i];
+    double qx = x1[i] - ax, qy = y1[i] - ay;
+    return (qx*sy - qy*sx) / (rx*sy - ry*sx);
+  }
+}
@@ -0,0 +1,221 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// reads wall files in the JSON format WallSet.save() writes:
+//   [
+//     [x1, y1, x2, y2],
+//     ...
+//   ]
+//   (with or without a comma after the last wall)
+// in a single pass straight over the file's bytes, without regexes,
+//   building one big String, or making substrings for numbers
+class WallFileReader implements AutoCloseable {
+  static final int CHUNK = 1 << 16;  // bytes read from the file at a time
+
+  FileChannel in;
+  ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK);
+
+  int c;              // current character, or -1 at end of file
+  int line = 1, col = 0;  // position of c, for error messages
+
+  // coordinates read so far, 4 per wall
+  float[] coords = new float[256];
+  int count = 0;
+
+  // problem with the contents of a file, and where it is
+  static class FormatException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    FormatException(String message, int line, int col) {
+      super("line " + line + ", column " + col + ": " + message);
+    }
+  }
+
+  WallFileReader(File f) throws IOException {
+    in = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+    buf.limit(0);
+    advance();
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+
+  // reads the whole file, returning x1, y1, x2, y2 of each wall in turn
+  //   (only the first 4*count() are used)
+  float[] readAll() throws IOException, FormatException {
+    expect('[');
+    skipSpace();
+    while (c == '[') {
+      readWall();
+      skipSpace();
+      if (c != ',') break;
+      advance();
+      skipSpace();
+    }
+    expect(']');
+    skipSpace();
+    if (c != -1) throw error("unexpected " + describe(c) + " after end of walls");
+
+    return coords;
+  }
+
+  // number of walls read
+  int count() {
+    return count / 4;
+  }
+
+  void readWall() throws IOException, FormatException {
+    expect('[');
+    for (int i = 0; i < 4; i++) {
+      if (i > 0) expect(',');
+      skipSpace();
+      float value = readNumber();
+
+      if (count == coords.length) coords = Arrays.copyOf(coords, count * 2);
+      coords[count++] = value;
+    }
+    expect(']');
+  }
+
+  // characters of the number being read (kept from number to number)
+  char[] token = new char[32];
+  int length;
+
+  // parses a decimal number (optional sign, digits, optional fraction,
+  //   optional exponent) from the characters directly
+  // NOTE: short numbers (up to 2^24, times or over up to 10^10) are
+  //   worked out straight from the digits: both parts are exact as
+  //   floats, so one multiply/divide rounds once, just as parseFloat
+  //   does. Anything longer (eg the 9 digits Float.toString can print)
+  //   goes to Float.parseFloat, since scaling in double and then
+  //   rounding to float again can be off by one in the last place
+  float readNumber() throws IOException, FormatException {
+    int startLine = line, startCol = col;
+    length = 0;
+    boolean negative = false;
+    if (c == '-' || c == '+') {
+      negative = c == '-';
+      take();
+    }
+
+    long digits = 0;
+    int scale = 0;      // value = digits * 10^scale
+    int seen = 0;       // significant digits kept in "digits"
+    boolean any = false;
+
+    while (isDigit(c)) {
+      any = true;
+      if (seen < 18) {
+        digits = digits * 10 + (c - '0');
+        if (digits != 0) seen++;
+      }
+      else scale++;  // too many digits to keep; just track magnitude
+      take();
+    }
+    if (c == '.') {
+      take();
+      while (isDigit(c)) {
+        any = true;
+        if (seen < 18) {
+          digits = digits * 10 + (c - '0');
+          if (digits != 0) seen++;
+          scale--;
+        }
+        take();
+      }
+    }
+    if (!any) throw new FormatException("expected a number but found " + describe(c),
+                                        startLine, startCol);
+
+    if (c == 'e' || c == 'E') {
+      take();
+      boolean negExp = false;
+      if (c == '-' || c == '+') {
+        negExp = c == '-';
+        take();
+      }
+      if (!isDigit(c)) throw error("expected exponent digits but found " + describe(c));
+      int exp = 0;
+      while (isDigit(c)) {
+        if (exp < 10000) exp = exp * 10 + (c - '0');
+        take();
+      }
+      scale += negExp ? -exp : exp;
+    }
+
+    if (digits > 1 << 24 || scale > 10 || scale < -10) {
+      return Float.parseFloat(new String(token, 0, length));
+    }
+    float value = scale >= 0 ? (float) digits * POW10[scale] : (float) digits / POW10[-scale];
+    return negative ? -value : value;
+  }
+
+  // keeps the current character as part of the number, and moves on
+  void take() throws IOException {
+    if (length == token.length) token = Arrays.copyOf(token, length * 2);
+    token[length++] = (char) c;
+    advance();
+  }
+
+  // powers of ten that are exact as floats
+  static final float[] POW10 = new float[11];
+  static {
+    POW10[0] = 1;
+    for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+  }
+
+  // ==== characters ==== //
+
+  // moves on to the next character of the file
+  void advance() throws IOException {
+    if (c == '\n') {
+      line++;
+      col = 0;
+    }
+    if (!buf.hasRemaining()) {
+      buf.clear();
+      int n;
+      do n = in.read(buf); while (n == 0);
+      buf.flip();
+      if (n < 0) {
+        c = -1;
+        return;
+      }
+    }
+    // NOTE: the format is plain ASCII, so bytes are characters
+    c = buf.get() & 0xff;
+    col++;
+  }
+
+  void skipSpace() throws IOException {
+    while (c == ' ' || c == '\n' || c == '\r' || c == '\t') advance();
+  }
+
+  // skips spacing, then requires (and moves past) a character
+  void expect(char wanted) throws IOException, FormatException {
+    skipSpace();
+    if (c != wanted) {
+      throw error("expected '" + wanted + "' but found " + describe(c));
+    }
+    advance();
+  }
+
+  FormatException error(String message) {
+    return new FormatException(message, line, col);
+  }
+
+  static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  static String describe(int c) {
+    if (c == -1) return "end of file";
+    if (c == '\n') return "end of line";
+    return "'" + (char) c + "'";
+  }
+}
@@ -0,0 +1,359 @@
+import java.util.Arrays;
+
+// uniform grid of square cells, each holding the (WallBuffer slots of)
+//   walls that pass through it, so segment queries only need to look
+//   at walls in the cells a segment actually crosses
+// NOTE: the grid stops growing at MAX_SIDE cells a side; anything past
+//   that (a wall far off, or with huge coordinates) goes in the cells
+//   along the edge nearest it, and walks past the edge visit those same
+//   edge cells, so nothing is missed, it just gets tested more often
+class WallGrid {
+  static final float CELL_SIZE = 20;
+  // most columns (or rows) the grid grows to, so at most ~1M cells
+  static final int MAX_SIDE = 1024;
+
+  // coordinates of every wall indexed here
+  WallBuffer buf;
+
+  // range of cells covered: columns minCx..minCx+cols-1,
+  //   rows minCy..minCy+rows-1 (grows as walls are added, up to
+  //   MAX_SIDE each way)
+  int minCx, minCy, cols, rows;
+  // wall slots in each cell: cells[c][0..counts[c]-1]
+  int[][] cells;
+  int[] counts;
+
+  // flat cell indices each slot was placed in, so a wall can be
+  //   removed even after its points have been moved
+  int[][] placed = new int[0][];
+
+  WallGrid(WallBuffer buf) {
+    this.buf = buf;
+  }
+
+  // something that looks at the walls of one cell at a time
+  interface CellVisitor {
+    // walls in slots ids[0..n-1]; return false to stop walking
+    boolean visit(int[] ids, int n);
+  }
+
+  // drops everything and re-adds every wall in the buffer
+  void rebuild() {
+    placed = new int[buf.walls.length][];
+    cells = null;
+    counts = null;
+    cols = rows = 0;
+    for (int s = 0; s < buf.size; s++) {
+      if (buf.walls[s] != null) insert(s);
+    }
+  }
+
+  // (re)indexes a slot at its current coordinates
+  void update(int s) {
+    remove(s);
+    insert(s);
+  }
+
+  void insert(int s) {
+    if (s >= placed.length) placed = Arrays.copyOf(placed, buf.walls.length);
+    if (placed[s] != null) return;
+
+    float x1 = buf.x1[s], y1 = buf.y1[s], x2 = buf.x2[s], y2 = buf.y2[s];
+    cover(x1, y1, x2, y2);
+
+    int[] indices = cellsOf(x1, y1, x2, y2);
+    for (int index : indices) {
+      if (cells[index] == null) cells[index] = new int[4];
+      else if (counts[index] == cells[index].length) {
+        cells[index] = Arrays.copyOf(cells[index], counts[index] * 2);
+      }
+      cells[index][counts[index]++] = s;
+    }
+    placed[s] = indices;
+  }
+
+  void remove(int s) {
+    if (s < 0 || s >= placed.length || placed[s] == null) return;
+
+    for (int index : placed[s]) removeFrom(index, s);
+    placed[s] = null;
+  }
+
+  // takes a slot out of one cell (order within a cell doesn't matter)
+  void removeFrom(int index, int s) {
+    int[] cell = cells[index];
+    for (int i = counts[index] - 1; i >= 0; i--) {
+      if (cell[i] == s) {
+        cell[i] = cell[--counts[index]];
+        break;
+      }
+    }
+  }
+
+  // every cell crossed by a segment, in order
+  int[] cellsOf(float x1, float y1, float x2, float y2) {
+    int[][] out = {new int[16]};
+    int[] n = {0};
+    walk(x1, y1, x2, y2, index -> {
+      // a walk can come back to the cell it just left (see walk)
+      if (n[0] > 0 && out[0][n[0] - 1] == index) return true;
+      if (n[0] == out[0].length) out[0] = Arrays.copyOf(out[0], n[0] * 2);
+      out[0][n[0]++] = index;
+      return true;
+    });
+    return Arrays.copyOf(out[0], n[0]);
+  }
+
+  // visits the walls of each (non-empty) cell crossed by a->b, in order
+  //   from a to b, until the visitor returns false
+  // returns false if the walk was stopped early
+  boolean walk(float ax, float ay, float bx, float by, CellVisitor v) {
+    return walk(ax, ay, bx, by, index -> {
+      int n = counts[index];
+      return n == 0 || v.visit(cells[index], n);
+    });
+  }
+
+  // ==== cell math ==== //
+
+  static int cellOf(float c) {
+    return (int) Math.floor(c / CELL_SIZE);
+  }
+
+  // makes sure the cell range covers the box around a segment,
+  //   growing (and re-placing every wall) if it doesn't and still can
+  void cover(float x1, float y1, float x2, float y2) {
+    int lowX = cellOf(Math.min(x1, x2)), highX = cellOf(Math.max(x1, x2));
+    int lowY = cellOf(Math.min(y1, y2)), highY = cellOf(Math.max(y1, y2));
+
+    if (cells != null &&
+        lowX >= minCx && highX < minCx + cols &&
+        lowY >= minCy && highY < minCy + rows) return;
+
+    // grow to at least double the old size, so repeated growth is cheap
+    if (cells != null) {
+      lowX = Math.min(lowX, minCx - cols/2);
+      lowY = Math.min(lowY, minCy - rows/2);
+      highX = Math.max(highX, minCx + cols + cols/2);
+      highY = Math.max(highY, minCy + rows + rows/2);
+    }
+    int newCx = fit(lowX, highX, minCx, cols), newCols = size(lowX, highX);
+    int newCy = fit(lowY, highY, minCy, rows), newRows = size(lowY, highY);
+    // already as big as it gets: the segment goes in the edge cells
+    if (cells != null && newCx == minCx && newCols == cols &&
+        newCy == minCy && newRows == rows) return;
+
+    boolean[] wasPlaced = new boolean[placed.length];
+    for (int s = 0; s < placed.length; s++) wasPlaced[s] = placed[s] != null;
+    Arrays.fill(placed, null);
+
+    minCx = newCx;
+    minCy = newCy;
+    cols = newCols;
+    rows = newRows;
+    cells = new int[cols * rows][];
+    counts = new int[cols * rows];
+
+    for (int s = 0; s < wasPlaced.length; s++) {
+      if (wasPlaced[s]) insert(s);
+    }
+  }
+
+  // number of cells from low to high, up to MAX_SIDE
+  static int size(int low, int high) {
+    return (int) Math.min(MAX_SIDE, (long) high - low + 1);
+  }
+
+  // first of the cells covering low..high: low itself if they fit in
+  //   MAX_SIDE, else as near low as still keeps the cells covered now
+  //   (oldLow, count of them) covered
+  static int fit(int low, int high, int oldLow, int oldCount) {
+    if ((long) high - low + 1 <= MAX_SIDE || oldCount == 0) return low;
+    return (int) Math.max(low, (long) oldLow + oldCount - MAX_SIDE);
+  }
+
+  // something that looks at one cell index at a time
+  interface IndexVisitor {
+    boolean visit(int index);
+  }
+
+  // visits the flat index of every cell crossed by segment
+  //   (x1,y1)-(x2,y2), clamped to the covered range, in order
+  boolean walk(float x1, float y1, float x2, float y2, IndexVisitor v) {
+    return walkXY(x1, y1, x2, y2, (cx, cy) -> visitCell(cx, cy, v));
+  }
+
+  // visits every cell crossed by the segment and every cell next to
+  //   those (possibly more than once), so every wall within CELL_SIZE
+  //   of the segment is seen
+  // NOTE: a cell past the edge clamps to an edge cell, and the cells
+  //   next to it clamp to that one's neighbours (or itself), so those
+  //   are covered too
+  boolean walkNear(float x1, float y1, float x2, float y2, IndexVisitor v) {
+    return walkXY(x1, y1, x2, y2, (cx, cy) -> visitNear(cx, cy, v));
+  }
+
+  // visits the flat index of cell (cx, cy) and of each cell next to it
+  //   that's in the covered range
+  boolean visitNear(int cx, int cy, IndexVisitor v) {
+    for (int ny = cy - 1; ny <= cy + 1; ny++) {
+      for (int nx = cx - 1; nx <= cx + 1; nx++) {
+        if (!visitCell(nx, ny, v)) return false;
+      }
+    }
+    return true;
+  }
+
+  // visits the flat index of every cell overlapping the box
+  //   (x1,y1)-(x2,y2), clamped to the covered range, row by row
+  boolean walkBox(float x1, float y1, float x2, float y2, IndexVisitor v) {
+    if (cells == null) return true;
+    int lastCx = minCx + cols - 1, lastCy = minCy + rows - 1;
+    int lowCx = clamp(cellOf(Math.min(x1, x2)), minCx, lastCx);
+    int highCx = clamp(cellOf(Math.max(x1, x2)), minCx, lastCx);
+    int lowCy = clamp(cellOf(Math.min(y1, y2)), minCy, lastCy);
+    int highCy = clamp(cellOf(Math.max(y1, y2)), minCy, lastCy);
+
+    for (int cy = lowCy; cy <= highCy; cy++) {
+      for (int cx = lowCx; cx <= highCx; cx++) {
+        if (!v.visit((cy - minCy) * cols + (cx - minCx))) return false;
+      }
+    }
+    return true;
+  }
+
+  // something that looks at one cell (by column/row) at a time
+  interface CellXYVisitor {
+    boolean visit(int cx, int cy);
+  }
+
+  // visits the column/row of every cell crossed by the segment,
+  //   clamped to the covered range, in order
+  // NOTE: the segment is cut where it crosses the lines along the edges
+  //   of the range; each piece is then either inside it, or off to one
+  //   side (or corner), where the cells it crosses all clamp to a run
+  //   of edge cells (or the corner cell). Where two pieces meet, the
+  //   same cell may be visited twice in a row
+  boolean walkXY(float x1, float y1, float x2, float y2, CellXYVisitor v) {
+    if (cells == null) return true;
+
+    float dx = x2 - x1, dy = y2 - y1;
+    double a = cut(x1, dx, minCx * CELL_SIZE), b = cut(x1, dx, (minCx + cols) * CELL_SIZE);
+    double c = cut(y1, dy, minCy * CELL_SIZE), d = cut(y1, dy, (minCy + rows) * CELL_SIZE);
+    // in order along the segment
+    double s;
+    if (a > b) { s = a; a = b; b = s; }
+    if (c > d) { s = c; c = d; d = s; }
+    if (a > c) { s = a; a = c; c = s; }
+    if (b > d) { s = b; b = d; d = s; }
+    if (b > c) { s = b; b = c; c = s; }
+
+    return walkPiece(x1, y1, dx, dy, 0, a, v) && walkPiece(x1, y1, dx, dy, a, b, v) &&
+           walkPiece(x1, y1, dx, dy, b, c, v) && walkPiece(x1, y1, dx, dy, c, d, v) &&
+           walkPiece(x1, y1, dx, dy, d, 1, v);
+  }
+
+  // how far along (from + t*delta) crosses line, or 1 if it doesn't
+  //   before the end
+  static double cut(float from, float delta, float line) {
+    double t = (line - from) / (double) delta;
+    return t > 0 && t < 1 ? t : 1;
+  }
+
+  // visits the cells of the piece from t0 to t1 of the segment from
+  //   (x1, y1) by (dx, dy), which is all inside the range or all outside
+  // NOTE: grid traversal in the style of Amanatides & Woo; when the
+  //   segment passes exactly through a cell corner, both side cells
+  //   are visited too so nothing touching the corner is missed
+  boolean walkPiece(float x1, float y1, float dx, float dy, double t0, double t1,
+                    CellXYVisitor v) {
+    if (t1 <= t0) return true;
+
+    int lowCx = minCx, lowCy = minCy;
+    int highCx = minCx + cols - 1, highCy = minCy + rows - 1;
+    double sx = x1 + t0*dx, sy = y1 + t0*dy;
+    double ex = x1 + t1*dx, ey = y1 + t1*dy;
+
+    int cx = clamp(cellOf((float) sx), lowCx, highCx), cy = clamp(cellOf((float) sy), lowCy, highCy);
+    int endX = clamp(cellOf((float) ex), lowCx, highCx), endY = clamp(cellOf((float) ey), lowCy, highCy);
+
+    int stepX = dx > 0 ? 1 : -1;
+    int stepY = dy > 0 ? 1 : -1;
+
+    // off to one side, only one of column/row changes (off a corner,
+    //   neither does)
+    double mx = (sx + ex) / 2, my = (sy + ey) / 2;
+    if (mx < minCx * CELL_SIZE || mx > (highCx + 1) * CELL_SIZE ||
+        my < minCy * CELL_SIZE || my > (highCy + 1) * CELL_SIZE) {
+      if (!v.visit(cx, cy)) return false;
+      while (cx != endX || cy != endY) {
+        if (cx != endX) cx += stepX;
+        else            cy += stepY;
+        if (!v.visit(cx, cy)) return false;
+      }
+      return true;
+    }
+
+    // "time" (in units of the original segment) to cross one cell,
+    //   and to reach the next cell boundary
+    double deltaX = dx == 0 ? Double.POSITIVE_INFINITY : CELL_SIZE / Math.abs(dx);
+    double deltaY = dy == 0 ? Double.POSITIVE_INFINITY : CELL_SIZE / Math.abs(dy);
+    double nextX = dx == 0 ? Double.POSITIVE_INFINITY
+                 : ((cx + (dx > 0 ? 1 : 0)) * CELL_SIZE - sx) / dx;
+    double nextY = dy == 0 ? Double.POSITIVE_INFINITY
+                 : ((cy + (dy > 0 ? 1 : 0)) * CELL_SIZE - sy) / dy;
+
+    // number of steps is known up front, which also guards against
+    //   rounding trouble sending the walk off forever
+    int steps = Math.abs(endX - cx) + Math.abs(endY - cy);
+
+    if (!v.visit(cx, cy)) return false;
+    while (steps > 0) {
+      if (nextX < nextY) {
+        cx += stepX;
+        nextX += deltaX;
+        steps--;
+      }
+      else if (nextY < nextX) {
+        cy += stepY;
+        nextY += deltaY;
+        steps--;
+      }
+      else {
+        // exactly through a corner
+        if (!v.visit(cx + stepX, cy)) return false;
+        if (!v.visit(cx, cy + stepY)) return false;
+        cx += stepX;
+        cy += stepY;
+        nextX += deltaX;
+        nextY += deltaY;
+        steps -= 2;
+      }
+      if (!v.visit(cx, cy)) return false;
+    }
+    return true;
+  }
+
+  // whether cell (cx, cy) is on the edge of the covered range, so may
+  //   be standing in for cells past it too
+  boolean onEdge(int cx, int cy) {
+    return cx == minCx || cx == minCx + cols - 1 || cy == minCy || cy == minCy + rows - 1;
+  }
+
+  // visits one cell by column/row, ignoring cells outside the range
+  boolean visitCell(int cx, int cy, IndexVisitor v) {
+    int index = indexOf(cx, cy);
+    return index < 0 || v.visit(index);
+  }
+
+  // flat index of cell (cx, cy), or -1 if it's outside the covered range
+  int indexOf(int cx, int cy) {
+    int col = cx - minCx, row = cy - minCy;
+    if (col < 0 || col >= cols || row < 0 || row >= rows) return -1;
+    return row * cols + col;
+  }
+
+  static int clamp(int c, int low, int high) {
+    return Math.max(low, Math.min(high, c));
+  }
+}
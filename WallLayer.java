@@ -0,0 +1,104 @@
+import java.util.Arrays;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+// the walls of a WallSet drawn once into an offscreen image, which is
+//   then drawn each frame in one go until the walls (or the view) change
+// NOTE: WallSet.changes goes up with every edit (including each step of
+//   dragging a point), so the image is only drawn again when something
+//   actually moved, and never while playing with the view still
+// NOTE: only walls in grid cells on screen are looked at, and walls
+//   shorter than a pixel on screen (zoomed out) are drawn as a single
+//   dot per pixel instead of a line each, so drawing costs about what's
+//   visible rather than the size of the whole set
+class WallLayer {
+  // width of a wall at zoom 1
+  static final float WEIGHT = 5;
+
+  PGraphics image;
+  // set (and its changes count) and view the image is of
+  WallSet drawn;
+  int drawnChanges;
+  float drawnX, drawnY, drawnZoom;
+
+  // what's been drawn this time: slots (long walls are in several
+  //   cells) and pixels (for dots); whatever equals stamp is done
+  int[] wallMark = new int[0], pixelMark = new int[0];
+  int stamp = 0;
+  // pixels that get a dot
+  int[] dots = new int[0];
+  int dotCount;
+
+  void display(PApplet pa, WallSet ws, Camera cam) {
+    if (image == null || image.width != pa.width || image.height != pa.height) {
+      image = pa.createGraphics(pa.width, pa.height);
+      pixelMark = new int[pa.width * pa.height];
+      dots = new int[pa.width * pa.height];
+      drawn = null;
+    }
+    if (drawn != ws || drawnChanges != ws.changes ||
+        drawnX != cam.x || drawnY != cam.y || drawnZoom != cam.zoom) {
+      redraw(ws, cam);
+      drawn = ws;
+      drawnChanges = ws.changes;
+      drawnX = cam.x;
+      drawnY = cam.y;
+      drawnZoom = cam.zoom;
+    }
+    pa.image(image, 0, 0);
+  }
+
+  void redraw(WallSet ws, Camera cam) {
+    WallBuffer buf = ws.buffer;
+    if (wallMark.length < buf.size) wallMark = Arrays.copyOf(wallMark, buf.walls.length);
+    stamp++;
+    dotCount = 0;
+
+    // walls in screen space, so they can be sized to the pixel
+    float weight = Math.max(1, WEIGHT * cam.zoom);
+    int w = image.width, h = image.height;
+    image.beginDraw();
+    image.clear();  // transparent, so whatever's under the walls shows
+    image.stroke(0); // black
+    image.strokeWeight(weight);
+
+    // anything within half a wall's (drawn) width of the screen shows;
+    //   that's in pixels, so as far as the world goes it grows when
+    //   zoomed out past where walls stop getting thinner
+    float pad = weight / 2 / cam.zoom;
+    ws.grid.walkBox(cam.worldX(0) - pad, cam.worldY(0) - pad,
+                    cam.worldX(w) + pad, cam.worldY(h) + pad, index -> {
+      int[] ids = ws.grid.cells[index];
+      for (int k = ws.grid.counts[index] - 1; k >= 0; k--) {
+        int s = ids[k];
+        if (wallMark[s] == stamp) continue;
+        wallMark[s] = stamp;
+
+        float x1 = cam.screenX(buf.x1[s]), y1 = cam.screenY(buf.y1[s]);
+        float x2 = cam.screenX(buf.x2[s]), y2 = cam.screenY(buf.y2[s]);
+        if (Math.abs(x2 - x1) >= 1 || Math.abs(y2 - y1) >= 1) {
+          image.line(x1, y1, x2, y2);
+          continue;
+        }
+        // smaller than a pixel: one dot for every wall in that pixel
+        int px = (int) ((x1 + x2) / 2), py = (int) ((y1 + y2) / 2);
+        if (px < 0 || px >= w || py < 0 || py >= h) continue;
+        int pixel = py * w + px;
+        if (pixelMark[pixel] == stamp) continue;
+        pixelMark[pixel] = stamp;
+        dots[dotCount++] = pixel;
+      }
+      return true;
+    });
+
+    if (dotCount > 0) {
+      image.beginShape(PApplet.POINTS);
+      for (int i = 0; i < dotCount; i++) {
+        image.vertex(dots[i] % w + 0.5f, dots[i] / w + 0.5f);
+      }
+      image.endShape();
+    }
+    image.endDraw();
+  }
+}
@@ -1,15 +1,13 @@
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Deque;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Scanner;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import processing.core.PApplet;
 
@@ -17,13 +15,34 @@ import processing.core.PApplet;
 public class WallSet {
   final static int STACK_LIMIT = 200; // max size of undo/redo stack
   final static String PATH_PREFIX = "wallsets/";
+  // # of modifications that triggers an automatic save (0: never)
+  static int AUTOSAVE_MODS = 25;
   
   String name = null; // name of save file
-  int mods = 0;       // # of modifications since last save
+  int mods = 0;       // # of modifications (less undos) so far
+  // mods as of the last save that made it to disk (set from the save
+  //   thread, only once the write has worked)
+  volatile int savedMods = 0;
+  // whether the last background save failed (set from the save thread)
+  volatile boolean saveFailed = false;
+  // log of edits not saved to the file yet (only once there is a file)
+  Journal journal = null;
+  // goes up with every change to the walls, of any kind
+  int changes = 0;
   
   // actual map data
-  Set<Wall> walls = new HashSet<>();
-  Set<Point> points = new HashSet<>();
+  // NOTE: linked sets, so walls and points are always gone through in
+  //   the order they were added (Points hash by identity, so a plain
+  //   HashSet's order changes from run to run)
+  Set<Wall> walls = new LinkedHashSet<>();
+  Set<Point> points = new LinkedHashSet<>();
+  
+  // packed copy of wall coordinates, and a spatial index over it,
+  //   kept up to date by every change below
+  WallBuffer buffer = new WallBuffer();
+  WallGrid grid = new WallGrid(buffer);
+  // which wall endpoints can see each other, updated lazily
+  VisibilityGraph graph = new VisibilityGraph(this);
   
   // NOTE: stacks of events representing what can be undone
   Deque<Event> undoStack = new ArrayDeque<>();
@@ -33,7 +52,15 @@ public class WallSet {
   String getName() {
     if (name == null) return "(untitled wall set)";
     
-    return name + (mods == 0 ? "" : " (modified)");
+    if (saveFailed) return name + " (save failed)";
+    return name + (mods == savedMods ? "" : " (modified)");
+  }
+  
+  // journal for the current file name, or null if there isn't one
+  Journal journal() {
+    if (name == null) return null;
+    if (journal == null || !journal.name.equals(name)) journal = new Journal(name);
+    return journal;
   }
   
   // adds wall to this set, tracking the event
@@ -44,6 +71,7 @@ public class WallSet {
     mods++;
     undoStack.push(we);
     redoStack.clear();
+    autosave();
   }
   
   // removes wall from this set, tracking the event
@@ -54,6 +82,7 @@ public class WallSet {
     mods++;
     undoStack.push(we);
     redoStack.clear();
+    autosave();
   }
   
   // lock in movement for point p to its current position,
@@ -62,32 +91,69 @@ public class WallSet {
     if (!points.contains(p)) return;
     
     MoveEvent me = new MoveEvent(p, old);
+    wallChanged(p.wall);
+    if (journal() != null) journal().moved(p, old);
     
     mods++;
     undoStack.push(me);
     redoStack.clear();
+    autosave();
   }
   
   // reverts to saved data from file, tracking the event
   void revert() {
     if (name == null) return;
     
+    // the file on disk might still be about to change
+    WallSetWriter.flush();
+    
     Set<Wall> backupWalls = walls;
     Set<Point> backupPoints = points;
     
-    WallSet fromFile = fromFile(name);
+    // just the file: unsaved edits in the journal are what's being
+    //   thrown away
+    WallSet fromFile = fromFile(new File(PATH_PREFIX + name), false);
     if (fromFile == null) return;
     
     walls = fromFile.walls;
     points = fromFile.points;
+    wallsReplaced();
+    // back to exactly what's in the file
+    if (journal() != null) journal().clear();
     
     RevertEvent re = new RevertEvent(backupWalls, backupPoints);
     
-    mods = 0;
+    savedMods = mods;
     undoStack.push(re);
     redoStack.clear();
   }
   
+  // point p was moved directly (eg dragged) without an event;
+  //   keep anything depending on wall positions up to date
+  void pointMoved(Point p) {
+    if (p.wall != null && walls.contains(p.wall)) wallChanged(p.wall);
+  }
+  
+  // single place where a wall being added, removed or reshaped is
+  //   passed on to everything indexing the walls
+  void wallChanged(Wall w) {
+    if (w == null) return;
+    
+    changes++;
+    if (walls.contains(w)) grid.update(buffer.put(w));
+    else                   grid.remove(buffer.remove(w));
+    graph.wallChanged(w);
+  }
+  
+  // the whole set of walls was swapped out (eg revert)
+  void wallsReplaced() {
+    changes++;
+    buffer.clear();
+    for (Wall w : walls) buffer.put(w);
+    grid.rebuild();
+    graph.invalidate();
+  }
+  
   // message about what would be undone
   String undoPeek() {
     if (undoStack.isEmpty()) return "nothing to undo";
@@ -127,59 +193,148 @@ public class WallSet {
     return true;
   }
   
-  // saves wall data in JSON format to file with stored name, if any
+  // saves wall data to file with stored name, if any; in the binary
+  //   format if the name ends in .wallsb, otherwise JSON
+  // NOTE: only takes a snapshot here; the file is written in the
+  //   background (see WallSetWriter), so this returning true means the
+  //   save was queued, and any failure is reported once it happens;
+  //   the set only stops showing as modified once the write has worked
   boolean save() {
     if (name == null) return false;
     
-    String path = PATH_PREFIX + name;
-    
-    // NOTE: "try using" block allows assignment to any AutoCloseable
-    //   object, which will automatically be cleaned up at end of
-    //   try/catch/finally block to ensure all resources are closed
-    try ( PrintWriter out = new PrintWriter(new File(path)) ) {
-      out.println("[");
-      for (Wall w : walls) {
-        out.println("  " + w.toJson() + ",");
-      }
-      out.println("]");
+    File folder = new File(PATH_PREFIX);
+    File file = new File(folder, name);
+    try {
+      file.toPath();
+    }
+    catch (InvalidPathException ipe) {
+      System.err.println("Failed to save " + PATH_PREFIX + name);
+      System.err.println("  " + ipe.getMessage());
+      return false;
     }
-    catch (FileNotFoundException fnfe) {
-      System.err.println("Failed to save " + path);
-      System.err.println("  " + fnfe.getMessage());
+    if (!folder.isDirectory()) {
+      System.err.println("Failed to save " + PATH_PREFIX + name);
+      System.err.println("  no folder at " + folder.getAbsolutePath());
       return false;
     }
     
-    mods = 0;
-    System.out.println("Saved " + path);
+    WallSetWriter.save(this, file);
     return true;
   }
   
+  // saves in the background once enough changes have piled up
+  //   (only sets that already have a file name)
+  // NOTE: until that save has finished, each edit queues it again, which
+  //   just swaps in a newer snapshot (see WallSetWriter.save)
+  void autosave() {
+    if (name != null && AUTOSAVE_MODS > 0 && mods - savedMods >= AUTOSAVE_MODS) save();
+  }
+  
   // draw all walls in this set
   void display(PApplet pa) {
     for (Wall w : walls) w.display(pa);
   }
   
+  // below this many walls, testing all of them is cheaper than
+  //   walking the grid
+  static final int DIRECT_SCAN = 64;
+  
   // finds all points of intersection with walls along path from a->b
   List<Point> intersections(Point a, Point b) {
     List<Point> results = new ArrayList<>();
-    
-    for (Wall w : walls) {
-      Point crash = w.intersection(a, b);
-      if (crash != null) results.add(crash);
-    }
+    int skipA = buffer.slotOf(a.wall), skipB = buffer.slotOf(b.wall);
+    
+    // path exactly along a wall: "intersects" at its beginning
+    if (skipA >= 0 && skipA == skipB) results.add(a);
+    
+    // long walls live in several cells, so only check each one once
+    BitSet checked = new BitSet();
+    
+    grid.walk(a.x, a.y, b.x, b.y, (ids, n) -> {
+      for (int k = 0; k < n; k++) {
+        int i = ids[k];
+        if (i == skipA || i == skipB || checked.get(i)) continue;
+        checked.set(i);
+        Metrics.countTests(1);
+        
+        double t = buffer.hitAt(i, a.x, a.y, b.x, b.y);
+        if (!Double.isNaN(t)) {
+          results.add(new Point((float) (a.x + t*(b.x - a.x)),
+                                (float) (a.y + t*(b.y - a.y))));
+        }
+      }
+      return true;
+    });
     
     return results;
   }
   
+  // where along a->b (0 = a, 1 = b) the nearest wall crosses it, or NaN
+  //   if none do, for a path that starts or ends on the walls in slots
+  //   skipA and skipB (or -1 for neither)
+  // NOTE: pass in a RayCast kept from call to call to cast without
+  //   allocating anything (see RayCast)
+  double rayCast(float ax, float ay, float bx, float by, int skipA, int skipB, RayCast ray) {
+    return ray.cast(this, ax, ay, bx, by, skipA, skipB);
+  }
+  
+  double rayCast(float ax, float ay, float bx, float by, int skipA, int skipB) {
+    return rayCast(ax, ay, bx, by, skipA, skipB, new RayCast());
+  }
+  
   // checks to see if there is a clear path from a->b (no intersection
   //   points with any walls)
+  // NOTE: pass in a RayCast kept from call to call to check without
+  //   allocating anything (see RayCast)
+  boolean isClearPath(Point a, Point b, RayCast ray) {
+    // walls a path starts or ends on don't block it...
+    int skipA = buffer.slotOf(a.wall), skipB = buffer.slotOf(b.wall);
+    return isClearPath(a.x, a.y, b.x, b.y, skipA, skipB, ray);
+  }
+  
   boolean isClearPath(Point a, Point b) {
-    for (Wall w : walls) {
-      // crashing into any wall means no clear path
-      if (w.intersection(a, b) != null) return false;
-    }
- 
-    return true; // clear path if it hit no walls
+    return isClearPath(a, b, new RayCast());
+  }
+  
+  // same, for a path given by coordinates, that starts or ends on the
+  //   walls in slots skipA and skipB (or -1 for neither)
+  boolean isClearPath(float ax, float ay, float bx, float by, int skipA, int skipB,
+                      RayCast ray) {
+    // ...unless the path runs exactly along that wall
+    if (skipA >= 0 && skipA == skipB) return false;
+    // only walls in the cells along a->b can possibly be in the way
+    return !ray.blocks(this, ax, ay, bx, by, skipA, skipB);
+  }
+  
+  boolean isClearPath(float ax, float ay, float bx, float by, int skipA, int skipB) {
+    return isClearPath(ax, ay, bx, by, skipA, skipB, new RayCast());
+  }
+  
+  // closest wall point within radius of (x, y), or null if none are
+  // NOTE: only looks at walls in the grid cells around (x, y), so it
+  //   costs the same however big the set is
+  Point pointNear(float x, float y, float radius) {
+    Point[] best = {null};
+    float[] bestD2 = {radius * radius};
+    grid.walkBox(x - radius, y - radius, x + radius, y + radius, index -> {
+      int[] ids = grid.cells[index];
+      for (int k = grid.counts[index] - 1; k >= 0; k--) {
+        Wall w = buffer.walls[ids[k]];
+        if (closer(w.p1, x, y, bestD2)) best[0] = w.p1;
+        if (closer(w.p2, x, y, bestD2)) best[0] = w.p2;
+      }
+      return true;
+    });
+    return best[0];
+  }
+  
+  // whether p is within sqrt(bestD2[0]) of (x, y), making that the new
+  //   best if so
+  static boolean closer(Point p, float x, float y, float[] bestD2) {
+    float dx = p.x - x, dy = p.y - y;
+    if (dx*dx + dy*dy > bestD2[0]) return false;
+    bestD2[0] = dx*dx + dy*dy;
+    return true;
   }
   
   // produces WallSet from file in correct JSON format
@@ -190,57 +345,104 @@ public class WallSet {
   }
 
   // produces WallSet from file in correct JSON format
-  //   (2d array of wall coordinates)
+  //   (2d array of wall coordinates), with any unsaved edits from its
+  //   journal (eg from a crash) put back
   static WallSet fromFile(File f) {
+    return fromFile(f, true);
+  }
+  
+  // same, but only replaying the journal if replay is set
+  static WallSet fromFile(File f, boolean replay) {
+    if (WallBinaryFile.isBinary(f.getName())) return fromBinaryFile(f, replay);
     
-    StringBuilder jsonSB = new StringBuilder();
-    try ( Scanner in = new Scanner(f) ) {
-      while (in.hasNextLine()) {
-        // NOTE: remove all spacing from file with regex help
-        jsonSB.append(in.nextLine().replaceAll("\\s+", ""));
-      }
+    float[] coords;
+    int count;
+    
+    // NOTE: single pass over the file, no regexes (see WallFileReader)
+    try ( WallFileReader in = new WallFileReader(f) ) {
+      coords = in.readAll();
+      count = in.count();
+    }
+    catch (WallFileReader.FormatException fe) {
+      System.err.println("Invalid file pattern in " + f.getName());
+      System.err.println("  " + fe.getMessage());
+      return null;
     }
-    catch (FileNotFoundException fnfe) {
+    catch (IOException ioe) {
       System.err.println("Could not read " + f.getName());
-      System.err.println("  " + fnfe.getMessage());
+      System.err.println("  " + ioe.getMessage());
       return null;
     }
-    String json = jsonSB.toString();
     
-    // NOTE: regexes!!!
+    WallSet result = fromCoords(coords, count);
+    result.name = f.getName();
+    // edits that didn't make it into the file before (eg a crash)
+    if (replay) result.mods = Journal.replay(result);
     
-    String wallPatt = "\\[(\\d+\\.\\d+),(\\d+\\.\\d+),(\\d+\\.\\d+),(\\d+\\.\\d+)]";
-    // wall pattern: 4 comma separated decimals in square brackets
-    String filePatt = "\\[("+wallPatt+",)*("+wallPatt+")?]";
-    // file pattern: any number of comma-separated repetitions of the wall pattern,
-    //   optionally ending with one wall pattern without a comma, in square brackets
+    System.out.println("Loaded walls from " + f.getName());
+    return result;
+  }
+  
+  // produces WallSet from file in the binary .wallsb format
+  static WallSet fromBinaryFile(File f, boolean replay) {
+    float[] coords;
     
-    if (!json.matches(filePatt)) {
-      System.err.println("Invalid file pattern in " + f.getName());
+    try {
+      coords = WallBinaryFile.read(f);
+    }
+    catch (WallBinaryFile.FormatException fe) {
+      System.err.println("Invalid binary wall file " + f.getName());
+      System.err.println("  " + fe.getMessage());
+      return null;
+    }
+    catch (IOException ioe) {
+      System.err.println("Could not read " + f.getName());
+      System.err.println("  " + ioe.getMessage());
       return null;
     }
     
-    WallSet result = new WallSet();
+    WallSet result = fromCoords(coords, coords.length / 4);
     result.name = f.getName();
+    if (replay) result.mods = Journal.replay(result);
     
-    // NOTE: regex to extract # parts of each wall, then parsing
-    Matcher m = Pattern.compile(wallPatt).matcher(json);
-    while (m.find()) {
-      float x1 = Float.parseFloat(m.group(1));
-      float y1 = Float.parseFloat(m.group(2));
-      float x2 = Float.parseFloat(m.group(3));
-      float y2 = Float.parseFloat(m.group(4));
-      
-      Wall w = new Wall(x1, y1, x2, y2);
+    System.out.println("Loaded walls from " + f.getName());
+    return result;
+  }
+  
+  // produces (unnamed) WallSet from wall coordinates: x1, y1, x2, y2
+  //   of the first wall, then the second, ... for count walls
+  static WallSet fromCoords(float[] coords, int count) {
+    WallSet result = new WallSet();
+    // sized up front so big sets don't rehash over and over
+    result.walls = new LinkedHashSet<>(count * 2);
+    result.points = new LinkedHashSet<>(count * 4);
+    
+    for (int i = 0; i < count; i++) {
+      Wall w = new Wall(coords[4*i], coords[4*i + 1],
+                        coords[4*i + 2], coords[4*i + 3]);
       result.walls.add(w);
       result.points.add(w.p1);
       result.points.add(w.p2);
     }
+    result.wallsReplaced();
     
-    System.out.println("Loaded walls from " + f.getName());
     return result;
   }
   
+  // coordinates of every wall (x1, y1, x2, y2 of each in turn), the
+  //   reverse of fromCoords
+  float[] coords() {
+    float[] coords = new float[walls.size() * 4];
+    int i = 0;
+    for (Wall w : walls) {
+      coords[i++] = w.p1.x;
+      coords[i++] = w.p1.y;
+      coords[i++] = w.p2.x;
+      coords[i++] = w.p2.y;
+    }
+    return coords;
+  }
+  
   // allows all events to be done or undone
   interface Event {
     void doEvent();
@@ -275,6 +477,12 @@ public class WallSet {
         points.remove(w.p1);
         points.remove(w.p2);
       }
+      wallChanged(w);
+      
+      if (journal() != null) {
+        if (walls.contains(w)) journal().added(w);
+        else                   journal().removed(w);
+      }
     }
     
     public String toString() {
@@ -310,6 +518,9 @@ public class WallSet {
       temp = p.y;
       p.y = other.y;
       other.y = temp;
+      
+      wallChanged(p.wall);
+      if (journal() != null) journal().moved(p, other);
     }
     public void undoEvent() { doEvent(); }
     
@@ -347,6 +558,9 @@ public class WallSet {
       Set<Point> tempPoints = otherPoints;
       otherPoints = points;
       points = tempPoints;
+      
+      wallsReplaced();
+      if (journal() != null) journal().replaced(walls);
     }
     public void undoEvent() { doEvent(); }
     
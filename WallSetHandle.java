@@ -0,0 +1,51 @@
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// entry in the list of wall sets that loads its file lazily, in the
+//   background, so only sets that are actually looked at (or about to
+//   be) get parsed
+class WallSetHandle {
+  // shared pool doing all the parsing, leaving a core for drawing
+  // NOTE: daemon threads, so a load still going never keeps the
+  //   sketch from exiting
+  static final ExecutorService LOADER = Executors.newFixedThreadPool(
+    Math.max(1, Runtime.getRuntime().availableProcessors() - 1), r -> {
+      Thread t = new Thread(r, "wallset-loader");
+      t.setDaemon(true);
+      return t;
+    });
+
+  File file;  // null for sets that were never in a file
+  CompletableFuture<WallSet> loading;
+
+  // set to be read from a file when first needed
+  WallSetHandle(File file) {
+    this.file = file;
+  }
+
+  // set that already exists in memory (eg a brand new one)
+  WallSetHandle(WallSet ws) {
+    loading = CompletableFuture.completedFuture(ws);
+  }
+
+  // starts reading the file in the background, if not started yet
+  synchronized void prefetch() {
+    if (loading == null) {
+      loading = CompletableFuture.supplyAsync(() -> WallSet.fromFile(file), LOADER);
+    }
+  }
+
+  // whether get() would return without waiting
+  synchronized boolean isLoaded() {
+    return loading != null && loading.isDone();
+  }
+
+  // the wall set, waiting for it to finish loading if needed, or null
+  //   if the file couldn't be read
+  WallSet get() {
+    prefetch();
+    return loading.join();
+  }
+}
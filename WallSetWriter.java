@@ -0,0 +1,142 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// writes wall set files on a background thread, so saving (even a huge
+//   set) never holds up drawing
+// each save writes a snapshot of the walls to a temp file, forces it to
+//   disk, then renames it over the real file in one step, so a crash
+//   mid-save leaves the old file intact rather than half of a new one
+// NOTE: temp files go in a folder of their own (.tmp/ beside the real
+//   file, so the rename stays on one file system); one left behind by a
+//   crash is never mistaken for a wall set, since folders aren't loaded
+class WallSetWriter {
+  // one thread, so writes to the same file always happen in order
+  static final ExecutorService IO = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "wallset-io");
+    t.setDaemon(true);
+    return t;
+  });
+
+  // finish any waiting writes before the program exits
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      IO.shutdown();
+      try {
+        IO.awaitTermination(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException ie) {}
+    }));
+  }
+
+  // latest snapshot waiting to be written, per file
+  // NOTE: this is what coalesces saves: a save made while an older one
+  //   is still queued just replaces its snapshot, so only the newest
+  //   walls get written, once
+  static final Map<File, Snapshot> pending = new ConcurrentHashMap<>();
+
+  // wall coordinates (x1, y1, x2, y2 of each wall) as of one save
+  static class Snapshot {
+    WallSet owner;
+    int mods;  // owner's mods as of this snapshot
+    float[] coords;
+    // journal records this snapshot already includes
+    Journal journal;
+    long journalSeq;
+
+    Snapshot(WallSet owner) {
+      this.owner = owner;
+      mods = owner.mods;
+      journal = owner.journal();
+      if (journal != null) journalSeq = journal.seq;
+      coords = owner.coords();
+    }
+  }
+
+  // queues the current walls of ws to be written to f
+  static void save(WallSet ws, File f) {
+    if (pending.put(f, new Snapshot(ws)) == null) {
+      IO.execute(() -> write(f));
+    }
+  }
+
+  // waits for every save queued so far to finish
+  static void flush() {
+    try {
+      IO.submit(() -> {}).get();
+    }
+    catch (InterruptedException | ExecutionException e) {
+      System.err.println("Interrupted waiting for saves to finish");
+    }
+  }
+
+  // (on the IO thread) writes the newest snapshot for f
+  static void write(File f) {
+    Snapshot snap = pending.remove(f);
+    if (snap == null) return;
+
+    File temp = tempFor(f);
+    try {
+      if (!temp.getParentFile().isDirectory() && !temp.getParentFile().mkdirs()) {
+        throw new IOException("could not make " + temp.getParent());
+      }
+      if (WallBinaryFile.isBinary(f.getName())) WallBinaryFile.write(temp, snap.coords);
+      else                                      writeJson(temp, snap.coords);
+
+      // make sure the data is really on disk before it replaces anything
+      try ( FileChannel ch = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE) ) {
+        ch.force(true);
+      }
+
+      try {
+        Files.move(temp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (AtomicMoveNotSupportedException amnse) {
+        Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    catch (IOException ioe) {
+      System.err.println("Failed to save " + f.getPath());
+      System.err.println("  " + ioe.getMessage());
+      temp.delete();
+      snap.owner.saveFailed = true;
+      return;
+    }
+
+    snap.owner.saveFailed = false;
+    snap.owner.savedMods = snap.mods;
+    // the edits logged so far are all in the file now
+    if (snap.journal != null) snap.journal.saved(snap.journalSeq);
+    System.out.println("Saved " + f.getPath());
+  }
+
+  // where f is written before being renamed over f
+  static File tempFor(File f) {
+    return new File(new File(f.getAbsoluteFile().getParentFile(), ".tmp"), f.getName());
+  }
+
+  // JSON format: 2d array of wall coordinates
+  static void writeJson(File f, float[] coords) throws IOException {
+    try ( PrintWriter out = new PrintWriter(f) ) {
+      out.println("[");
+      for (int i = 0; i < coords.length; i += 4) {
+        out.println("  [" + coords[i] + ", " + coords[i + 1] + ", " +
+                    coords[i + 2] + ", " + coords[i + 3] + "],");
+      }
+      out.println("]");
+      if (out.checkError()) throw new IOException("error writing " + f.getName());
+    }
+  }
+}
@@ -0,0 +1,231 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+// benchmarks for the geometry, graph building and searches, over
+//   synthetic wall sets of different shapes and sizes, writing the
+//   results to JSON so runs from different versions can be compared
+// usage: java Bench [options]
+//   -sizes a,b,..    wall counts to try (100,1000,10000,100000)
+//   -graph N         biggest wall count to build graphs/search on (1000)
+//   -warmup N        warmup iterations per benchmark (3)
+//   -iterations N    measured iterations per benchmark (5)
+//   -time MS         length of each iteration (200)
+//   -only TEXT       only benchmarks whose name contains TEXT
+//   -out FILE        where to write results (bench.json)
+// NOTE: not JMH, since JMH won't generate benchmarks for classes in the
+//   default package (which the whole sketch is in); this follows the
+//   same plan (warmup, then timed iterations, results kept from the
+//   JIT by a "blackhole") and writes the same JSON layout, so the same
+//   tools can read it
+public class Bench {
+  static int warmup = 3, iterations = 5;
+  static long iterationNanos = 200_000_000L;
+
+  // results are folded into here so the JIT can't drop the work
+  static volatile int blackhole;
+
+  static List<String> results = new ArrayList<>();
+  static String only = null;
+
+  public static void main(String[] args) {
+    int[] sizes = {100, 1000, 10000, 100000};
+    int graphLimit = 1000;
+    File out = new File("bench.json");
+
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "-sizes":      sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray(); break;
+        case "-graph":      graphLimit = Integer.parseInt(value); break;
+        case "-warmup":     warmup = Integer.parseInt(value); break;
+        case "-iterations": iterations = Integer.parseInt(value); break;
+        case "-time":       iterationNanos = Long.parseLong(value) * 1_000_000L; break;
+        case "-only":       only = value; break;
+        case "-out":        out = new File(value); break;
+        default:
+          System.err.println("Unknown option " + args[i]);
+          return;
+      }
+    }
+
+    // plain geometry doesn't depend on the map
+    Random random = new Random(1);
+    Point[] segs = new Point[4096];
+    for (int i = 0; i < segs.length; i++) {
+      segs[i] = new Point(random.nextFloat() * 1000, random.nextFloat() * 1000);
+    }
+    run("Point.intersection", "", () -> {
+      int hits = 0;
+      for (int i = 0; i < segs.length; i += 4) {
+        if (Point.intersection(segs[i], segs[i + 1], segs[i + 2], segs[i + 3]) != null) hits++;
+      }
+      return hits;
+    }, segs.length / 4);
+
+    for (String shape : new String[]{"random", "maze", "corridors"}) {
+      for (int size : sizes) {
+        WallSet ws = Maps.make(shape, size, new Random(size));
+        String params = "\"shape\": \"" + shape + "\", \"walls\": \"" + ws.walls.size() + "\"";
+        benchGeometry(ws, params);
+        if (ws.walls.size() <= graphLimit) benchGraph(ws, params);
+      }
+    }
+
+    try ( PrintWriter pw = new PrintWriter(out) ) {
+      pw.println("[");
+      for (int i = 0; i < results.size(); i++) {
+        pw.println(results.get(i) + (i < results.size() - 1 ? "," : ""));
+      }
+      pw.println("]");
+    }
+    catch (FileNotFoundException fnfe) {
+      System.err.println("Failed to write " + out.getPath());
+      System.err.println("  " + fnfe.getMessage());
+      return;
+    }
+    System.out.println("Wrote " + out.getPath());
+  }
+
+  // segment tests against the walls of one map
+  static void benchGeometry(WallSet ws, String params) {
+    Wall[] walls = ws.walls.toArray(new Wall[0]);
+    float[] box = Maps.bounds(ws);
+    Random random = new Random(2);
+
+    // random paths across the map (not starting on walls)
+    Point[] paths = new Point[512];
+    for (int i = 0; i < paths.length; i++) {
+      paths[i] = new Point(box[0] + random.nextFloat() * (box[2] - box[0]),
+                           box[1] + random.nextFloat() * (box[3] - box[1]));
+    }
+    // paths between wall points, like graph building tests
+    Point[] ends = ws.points.toArray(new Point[0]);
+    Point[] pairs = new Point[512];
+    for (int i = 0; i < pairs.length; i++) pairs[i] = ends[random.nextInt(ends.length)];
+
+    run("Wall.intersection", params, () -> {
+      int hits = 0;
+      for (int i = 0; i < 256; i++) {
+        Wall w = walls[i % walls.length];
+        if (w.intersection(paths[(2*i) % paths.length], paths[(2*i + 1) % paths.length]) != null) hits++;
+      }
+      return hits;
+    }, 256);
+
+    run("WallSet.isClearPath", params, () -> {
+      int clear = 0;
+      for (int i = 0; i < paths.length; i += 2) {
+        if (ws.isClearPath(paths[i], paths[i + 1])) clear++;
+      }
+      return clear;
+    }, paths.length / 2);
+
+    run("WallSet.isClearPath.wallPoints", params, () -> {
+      int clear = 0;
+      for (int i = 0; i < pairs.length; i += 2) {
+        if (ws.isClearPath(pairs[i], pairs[i + 1])) clear++;
+      }
+      return clear;
+    }, pairs.length / 2);
+  }
+
+  // building the visibility graph, and each rule's search over it
+  static void benchGraph(WallSet ws, String params) {
+    run("VisibilityGraph.build", params, () -> {
+      ws.graph.invalidate();
+      ws.graph.sync();
+      return ws.graph.version;
+    }, 1);
+
+    // one of each search, chasing a player somewhere on the map
+    float[] box = Maps.bounds(ws);
+    Simulation sim = new Simulation(ws, box[2], box[3], new Point(0, 0), 3);
+    sim.reset();
+    sim.tick();  // works out who can see what
+
+    for (Mover m : sim.ghosts) {
+      MoveRule rule = m.rule;
+      IntSupplier search;
+      if (rule instanceof CachedRoute) {
+        search = () -> ((CachedRoute) rule).findDirections(m).size();
+      }
+      else if (rule instanceof depthFirstSearch) {
+        search = () -> ((depthFirstSearch) rule).findDirections(m).size();
+      }
+      else if (rule instanceof RandomizedMovement) {
+        search = () -> ((RandomizedMovement) rule).findDirections(m).size();
+      }
+      else continue;
+
+      run(rule.getClass().getSimpleName() + ".findDirections", params, search, 1);
+    }
+
+    // the one search every FlowField ghost shares, then each ghost's
+    //   step from it
+    DistanceField field = sim.fieldTo(sim.player);
+    run("DistanceField.build", params, () -> {
+      field.build();
+      return field.dist.length;
+    }, 1);
+    Mover[] ghosts = sim.ghosts;
+    run("DistanceField.next", params, () -> {
+      int found = 0;
+      for (Mover m : ghosts) {
+        if (field.next(m) != null) found++;
+      }
+      return found;
+    }, ghosts.length);
+    sim.detach();
+  }
+
+  // times one benchmark (each call doing opsPerCall operations) and
+  //   records the average time per operation, in nanoseconds
+  static void run(String name, String params, IntSupplier body, int opsPerCall) {
+    if (only != null && !name.contains(only)) return;
+    System.out.print(name + " {" + params + "} ");
+
+    for (int i = 0; i < warmup; i++) iteration(body, opsPerCall);
+    double[] scores = new double[iterations];
+    for (int i = 0; i < iterations; i++) scores[i] = iteration(body, opsPerCall);
+
+    double mean = 0;
+    for (double s : scores) mean += s;
+    mean /= scores.length;
+    double var = 0;
+    for (double s : scores) var += (s - mean) * (s - mean);
+    // rough 99.9% interval, like JMH's scoreError
+    double error = scores.length > 1 ? 3.29 * Math.sqrt(var / (scores.length - 1)) / Math.sqrt(scores.length) : 0;
+
+    System.out.println(String.format(Locale.ROOT, "%.1f ns/op", mean));
+
+    StringBuilder raw = new StringBuilder();
+    for (double s : scores) raw.append(raw.length() == 0 ? "" : ", ").append(String.format(Locale.ROOT, "%.3f", s));
+    results.add(String.format(Locale.ROOT,
+      "  {\"benchmark\": \"%s\", \"mode\": \"avgt\", \"warmupIterations\": %d, " +
+      "\"measurementIterations\": %d, \"params\": {%s}, " +
+      "\"primaryMetric\": {\"score\": %.3f, \"scoreError\": %.3f, \"scoreUnit\": \"ns/op\", " +
+      "\"rawData\": [[%s]]}}",
+      name, warmup, iterations, params, mean, error, raw));
+  }
+
+  // runs body for about iterationNanos, returning ns per operation
+  static double iteration(IntSupplier body, int opsPerCall) {
+    long calls = 0;
+    int sink = 0;
+    long start = System.nanoTime(), end = start + iterationNanos, now;
+    do {
+      sink += body.getAsInt();
+      calls++;
+      now = System.nanoTime();
+    } while (now < end);
+    blackhole += sink;
+    return (double) (now - start) / (calls * opsPerCall);
+  }
+}
@@ -0,0 +1,120 @@
+import java.util.Random;
+
+// synthetic wall sets for benchmarks, each with about n walls:
+//   random     - short segments scattered at constant density
+//   maze       - walls of a square grid maze (joined at the ends)
+//   corridors  - long rows of end-to-end walls, each with a gap at
+//                alternating ends, making one long winding corridor
+class Maps {
+  static final float CELL = 20;
+
+  static WallSet make(String shape, int n, Random random) {
+    switch (shape) {
+      case "random":    return random(n, random);
+      case "maze":      return maze(n, random);
+      case "corridors": return corridors(n);
+      default: throw new IllegalArgumentException("unknown map shape " + shape);
+    }
+  }
+
+  static WallSet random(int n, Random random) {
+    // about one wall per 30x30 area, whatever the count
+    float side = (float) Math.sqrt(n) * 30;
+    float[] coords = new float[n * 4];
+    for (int i = 0; i < n; i++) {
+      float x = random.nextFloat() * side, y = random.nextFloat() * side;
+      double angle = random.nextDouble() * Math.PI * 2;
+      float len = 5 + random.nextFloat() * 55;
+      coords[4*i]     = x;
+      coords[4*i + 1] = y;
+      coords[4*i + 2] = x + (float) (Math.cos(angle) * len);
+      coords[4*i + 3] = y + (float) (Math.sin(angle) * len);
+    }
+    return WallSet.fromCoords(coords, n);
+  }
+
+  // "perfect" maze (exactly one way between any two cells) carved by a
+  //   randomized depth-first search over a k x k grid
+  static WallSet maze(int n, Random random) {
+    // a k x k maze keeps about k*k of its 2*k*(k+1) cell edges
+    int k = Math.max(2, (int) Math.sqrt(n));
+    boolean[] right = new boolean[k * k], down = new boolean[k * k];  // open edges
+    boolean[] seen = new boolean[k * k];
+    int[] stack = new int[k * k];
+    int top = 0;
+    stack[top++] = 0;
+    seen[0] = true;
+    int[] options = new int[4];
+    while (top > 0) {
+      int c = stack[top - 1], x = c % k, y = c / k;
+      int count = 0;
+      if (x > 0     && !seen[c - 1]) options[count++] = c - 1;
+      if (x < k - 1 && !seen[c + 1]) options[count++] = c + 1;
+      if (y > 0     && !seen[c - k]) options[count++] = c - k;
+      if (y < k - 1 && !seen[c + k]) options[count++] = c + k;
+      if (count == 0) {
+        top--;
+        continue;
+      }
+      int next = options[random.nextInt(count)];
+      if      (next == c + 1) right[c] = true;
+      else if (next == c - 1) right[next] = true;
+      else if (next == c + k) down[c] = true;
+      else                    down[next] = true;
+      seen[next] = true;
+      stack[top++] = next;
+    }
+
+    float[] coords = new float[2 * k * (k + 1) * 4];
+    int w = 0;
+    for (int y = 0; y < k; y++) {
+      for (int x = 0; x < k; x++) {
+        int c = y * k + x;
+        if (x == k - 1 || !right[c]) w = put(coords, w, x + 1, y, x + 1, y + 1);
+        if (y == k - 1 || !down[c])  w = put(coords, w, x, y + 1, x + 1, y + 1);
+      }
+    }
+    for (int i = 0; i < k; i++) {
+      w = put(coords, w, i, 0, i + 1, 0);
+      w = put(coords, w, 0, i, 0, i + 1);
+    }
+    return WallSet.fromCoords(coords, w);
+  }
+
+  static WallSet corridors(int n) {
+    int perRow = Math.max(1, (int) Math.sqrt(n));
+    int rows = Math.max(1, n / perRow);
+    float[] coords = new float[rows * perRow * 4];
+    int w = 0;
+    for (int r = 0; r < rows; r++) {
+      // leave out the first or last piece of the row: the way through
+      int gap = r % 2 == 0 ? perRow - 1 : 0;
+      for (int i = 0; i < perRow; i++) {
+        if (i == gap && perRow > 1) continue;
+        w = put(coords, w, i, r + 1, i + 1, r + 1);
+      }
+    }
+    return WallSet.fromCoords(coords, w);
+  }
+
+  // adds a wall between grid corners, returning the next free wall
+  static int put(float[] coords, int w, int x1, int y1, int x2, int y2) {
+    coords[4*w]     = x1 * CELL;
+    coords[4*w + 1] = y1 * CELL;
+    coords[4*w + 2] = x2 * CELL;
+    coords[4*w + 3] = y2 * CELL;
+    return w + 1;
+  }
+
+  // minX, minY, maxX, maxY over every wall point
+  static float[] bounds(WallSet ws) {
+    float[] box = {Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+    for (Point p : ws.points) {
+      box[0] = Math.min(box[0], p.x);
+      box[1] = Math.min(box[1], p.y);
+      box[2] = Math.max(box[2], p.x);
+      box[3] = Math.max(box[3], p.y);
+    }
+    return box;
+  }
+}
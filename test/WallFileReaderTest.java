@@ -0,0 +1,122 @@
+import java.io.File;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// numbers have to read back exactly as Float.parseFloat would read them,
+//   so a saved set loads bit for bit the same
+class WallFileReaderTest {
+  @TempDir
+  Path dir;
+
+  float[] read(File f, int count) throws Exception {
+    try ( WallFileReader in = new WallFileReader(f) ) {
+      float[] coords = in.readAll();
+      assertEquals(count, in.count());
+      return coords;
+    }
+  }
+
+  @Test
+  void randomFloatsRoundTrip() throws Exception {
+    Random r = new Random(1);
+    int walls = 50000;
+    float[] coords = new float[walls * 4];
+    for (int i = 0; i < coords.length; i++) {
+      float x;
+      do x = Float.intBitsToFloat(r.nextInt()); while (Float.isNaN(x) || Float.isInfinite(x));
+      // plenty of everyday sizes too, not just huge and tiny ones
+      coords[i] = i % 2 == 0 ? x : (r.nextFloat() - 0.5f) * 2000;
+    }
+    File f = dir.resolve("random").toFile();
+    WallSetWriter.writeJson(f, coords);
+
+    float[] back = read(f, walls);
+    for (int i = 0; i < coords.length; i++) {
+      assertEquals(Float.floatToRawIntBits(coords[i]), Float.floatToRawIntBits(back[i]),
+                   "coordinate " + i + " was " + coords[i] + ", read " + back[i]);
+    }
+  }
+
+  // writes numbers 4 to a wall, reads them back, and checks each
+  //   against Float.parseFloat
+  void checkLikeParseFloat(String name, String[] numbers) throws Exception {
+    File f = dir.resolve(name).toFile();
+    try ( PrintWriter out = new PrintWriter(f) ) {
+      out.println("[");
+      for (int i = 0; i < numbers.length; i += 4) {
+        out.println("  [" + numbers[i] + ", " + numbers[i + 1] + ", " +
+                    numbers[i + 2] + ", " + numbers[i + 3] + "],");
+      }
+      out.println("]");
+    }
+
+    float[] back = read(f, numbers.length / 4);
+    for (int i = 0; i < numbers.length; i++) {
+      assertEquals(Float.floatToRawIntBits(Float.parseFloat(numbers[i])),
+                   Float.floatToRawIntBits(back[i]), numbers[i]);
+    }
+  }
+
+  // just either side of halfway between two floats is where rounding
+  //   to double first, then to float, goes wrong
+  @Test
+  void nearMidpointsReadLikeParseFloat() throws Exception {
+    Random r = new Random(3);
+    String[] numbers = new String[4000];
+    for (int i = 0; i < numbers.length; i += 2) {
+      float x;
+      do x = Float.intBitsToFloat(r.nextInt() & 0x7fffffff);
+      while (Float.isNaN(x) || Float.isInfinite(x) || x == Float.MAX_VALUE);
+      BigDecimal half = new BigDecimal(x).add(new BigDecimal(Math.nextUp(x)))
+                                         .divide(BigDecimal.valueOf(2));
+      BigDecimal nudge = half.ulp();  // far too small for a double to see
+      numbers[i] = half.add(nudge).toString();
+      numbers[i + 1] = half.subtract(nudge).toString();
+    }
+    checkLikeParseFloat("midpoints", numbers);
+  }
+
+  @Test
+  void decimalsReadLikeParseFloat() throws Exception {
+    Random r = new Random(2);
+    int walls = 20000;
+    String[] numbers = new String[walls * 4];
+    for (int i = 0; i < numbers.length; i++) {
+      StringBuilder sb = new StringBuilder();
+      if (r.nextBoolean()) sb.append('-');
+      int before = r.nextInt(12), after = r.nextInt(12);
+      for (int k = 0; k < before; k++) sb.append((char) ('0' + r.nextInt(10)));
+      if (before == 0 || after > 0) {
+        sb.append('.');
+        for (int k = 0; k < Math.max(1, after); k++) sb.append((char) ('0' + r.nextInt(10)));
+      }
+      if (r.nextInt(4) == 0) sb.append('e').append(r.nextInt(90) - 45);
+      numbers[i] = sb.toString();
+    }
+    checkLikeParseFloat("decimals", numbers);
+  }
+
+  @Test
+  void edgeValues() throws Exception {
+    float[] coords = {
+      -0.0f, 0, Float.MIN_VALUE, Float.MAX_VALUE,
+      -Float.MAX_VALUE, Float.MIN_NORMAL, 1e10f, 16777217,
+      0.1f, 1e-10f, 3.4028235E38f, 1.4E-45f,
+    };
+    File f = dir.resolve("edges").toFile();
+    WallSetWriter.writeJson(f, coords);
+
+    float[] back = read(f, coords.length / 4);
+    for (int i = 0; i < coords.length; i++) {
+      assertEquals(Float.floatToRawIntBits(coords[i]), Float.floatToRawIntBits(back[i]),
+                   "was " + coords[i] + ", read " + back[i]);
+    }
+  }
+}
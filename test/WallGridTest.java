@@ -0,0 +1,81 @@
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// the grid has to stay small, and find every wall a full scan would,
+//   however far apart (or far out) the walls are
+class WallGridTest {
+
+  @Test
+  void farWallDoesNotGrowGridPastLimit() {
+    WallSet ws = new WallSet();
+    ws.add(new Wall(0, 0, 100, 100));
+    ws.add(new Wall(1e6f, 1e6f, 1e6f + 50, 1e6f));
+    ws.add(new Wall(1e5f, 0, 1e5f, 50));
+
+    assertTrue(ws.grid.cols <= WallGrid.MAX_SIDE);
+    assertTrue(ws.grid.rows <= WallGrid.MAX_SIDE);
+    assertEquals(3, ws.walls.size());
+  }
+
+  @Test
+  void hugeCoordinatesLoad() {
+    float[] coords = {
+      -1e9f, -1e9f, 1e9f, 1e9f,
+      1e30f, 0, 1e30f, 10,
+      -1e30f, -1e30f, -1e30f + 1e25f, -1e30f,
+      0, 0, 10, 10,
+    };
+    WallSet ws = WallSet.fromCoords(coords, coords.length / 4);
+
+    assertTrue(ws.grid.cols <= WallGrid.MAX_SIDE);
+    assertTrue(ws.grid.rows <= WallGrid.MAX_SIDE);
+    // the long diagonal crosses everything near the origin
+    assertTrue(!ws.isClearPath(0, 10, 10, 0, -1, -1));
+    // (at 1e30 floats are ~1e23 apart)
+    assertTrue(!ws.isClearPath(1e30f - 1e24f, 5, 1e30f + 1e24f, 5, -1, -1));
+    assertTrue(ws.isClearPath(1e30f - 1e24f, 50, 1e30f + 1e24f, 50, -1, -1));
+  }
+
+  @Test
+  void queriesMatchFullScan() {
+    Random r = new Random(1);
+    int count = 2000;
+    float[] coords = new float[count * 4];
+    for (int i = 0; i < count; i++) {
+      // mostly a normal map, with some walls very far off
+      float spread = i % 10 == 0 ? 1e7f : 2000;
+      float x = (r.nextFloat() - 0.5f) * spread, y = (r.nextFloat() - 0.5f) * spread;
+      float len = i % 25 == 0 ? 1e6f : 80;
+      coords[4*i] = x;
+      coords[4*i + 1] = y;
+      coords[4*i + 2] = x + (r.nextFloat() - 0.5f) * len;
+      coords[4*i + 3] = y + (r.nextFloat() - 0.5f) * len;
+    }
+    WallSet ws = WallSet.fromCoords(coords, count);
+    assertTrue(ws.grid.cols <= WallGrid.MAX_SIDE);
+    assertTrue(ws.grid.rows <= WallGrid.MAX_SIDE);
+
+    WallBuffer buf = ws.buffer;
+    RayCast ray = new RayCast();
+    for (int k = 0; k < 20000; k++) {
+      float spread = k % 3 == 0 ? 2e7f : 3000;
+      float ax = (r.nextFloat() - 0.5f) * spread, ay = (r.nextFloat() - 0.5f) * spread;
+      float len = k % 2 == 0 ? 200 : spread;
+      float bx = ax + (r.nextFloat() - 0.5f) * len, by = ay + (r.nextFloat() - 0.5f) * len;
+
+      assertEquals(!buf.anyBlocks(ax, ay, bx, by, -1, -1),
+                   ws.isClearPath(ax, ay, bx, by, -1, -1, ray));
+
+      double nearest = Double.NaN;
+      for (int i = 0; i < buf.size; i++) {
+        double t = buf.hitAt(i, ax, ay, bx, by);
+        if (t < nearest || Double.isNaN(nearest)) nearest = t;
+      }
+      assertEquals(nearest, ws.rayCast(ax, ay, bx, by, -1, -1, ray));
+    }
+  }
+}